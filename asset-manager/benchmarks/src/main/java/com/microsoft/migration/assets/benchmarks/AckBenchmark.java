@@ -0,0 +1,103 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.service.AckAggregator;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Acknowledging messages through the {@link AckAggregator}: batch size 1 sends one basicAck per message like
+ * the listener did before, larger batches send one multi-message ack per batch.
+ *
+ * The channel is a stub that takes roundTripMicros for every ack or nack frame, standing in for the write to
+ * the broker. Every failureRate-th message is nacked, which is always a frame of its own. Throughput is in
+ * messages per second; the roundTrips counter is the number of frames per second it took.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AckBenchmark {
+
+    private static final int MESSAGES = 100;
+
+    @Param({"1", "5", "20"})
+    public int batchSize;
+
+    @Param({"50"})
+    public int roundTripMicros;
+
+    @Param({"100"})
+    public int failureRate;
+
+    private AckAggregator aggregator;
+    private Channel channel;
+    private long nextTag;
+    // Counters of the running measurement, which the stub channel adds its frames to
+    private RoundTrips frames;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RoundTrips {
+        public long roundTrips;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            roundTrips = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        aggregator = new AckAggregator(new SimpleMeterRegistry(), batchSize);
+        channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(), new Class<?>[] {Channel.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "basicAck", "basicNack" -> {
+                        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+                        frames.roundTrips++;
+                        yield null;
+                    }
+                    case "isOpen" -> true;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void acknowledge(RoundTrips roundTrips) throws IOException {
+        frames = roundTrips;
+        for (int i = 0; i < MESSAGES; i++) {
+            long tag = ++nextTag;
+            aggregator.delivered(channel, tag);
+            if (tag % failureRate == 0) {
+                aggregator.nack(channel, tag);
+            } else {
+                aggregator.ack(channel, tag);
+            }
+        }
+        // The scheduled flush, which picks up a partial batch
+        aggregator.flush();
+    }
+}
@@ -0,0 +1,86 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Block upload of an original to Blob Storage, across sizes and the azure.storage.upload.block-size and
+ * max-concurrency settings, the way AwsS3Service.uploadObject sends it: content above the block size is
+ * staged in blocks of that size, up to maxConcurrency at a time, then committed.
+ *
+ * Runs against the storage account of the connection string in the benchmark.storage.connection-string
+ * system property, by default a local Azurite instance. Each trial works in a container of its own that is
+ * deleted afterwards. Against Azurite the numbers show the client side and the loopback; the service and
+ * the network to it decide the rest, so compare settings on the account that will run them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class BlockUploadBenchmark {
+
+    private static final String CONNECTION_STRING_PROPERTY = "benchmark.storage.connection-string";
+
+    @Param({"8", "64", "256"})
+    public int megabytes;
+
+    @Param({"4", "8", "32"})
+    public int blockMegabytes;
+
+    @Param({"1", "4", "8"})
+    public int maxConcurrency;
+
+    private BlobContainerClient containerClient;
+    private BlobClient blobClient;
+    private ParallelTransferOptions transferOptions;
+
+    @Setup
+    public void setUp() {
+        String connectionString = System.getProperty(CONNECTION_STRING_PROPERTY, "UseDevelopmentStorage=true");
+        containerClient = new BlobServiceClientBuilder()
+                .connectionString(connectionString)
+                .buildClient()
+                .getBlobContainerClient("upload-benchmark-" + UUID.randomUUID());
+        containerClient.create();
+        blobClient = containerClient.getBlobClient("original.jpg");
+        long blockSize = blockMegabytes * 1024L * 1024L;
+        transferOptions = new ParallelTransferOptions()
+                .setBlockSizeLong(blockSize)
+                .setMaxConcurrency(maxConcurrency)
+                .setMaxSingleUploadSizeLong(blockSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        containerClient.delete();
+    }
+
+    @Benchmark
+    public int upload() {
+        long size = megabytes * 1024L * 1024L;
+        BlobParallelUploadOptions options = new BlobParallelUploadOptions(new UploadBenchmark.FileContent(size))
+                .setParallelTransferOptions(transferOptions);
+        // Overwrites the blob of the previous invocation
+        return blobClient.uploadWithResponse(options, null, null).getStatusCode();
+    }
+}
@@ -0,0 +1,67 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding an original: a full decode against the worker's subsampled decode for a given thumbnail size
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+
+    @Param({"640x480", "1920x1080", "4032x3024"})
+    public String resolution;
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    @Param({"600"})
+    public int maxDimension;
+
+    @Param({"" + ImageDecoder.DEFAULT_OVERSAMPLE})
+    public int oversample;
+
+    private byte[] original;
+    private ImageDecoder decoder;
+
+    @Setup
+    public void setUp() {
+        original = SyntheticCorpus.encoded(resolution, format);
+        decoder = new ImageDecoder(oversample);
+    }
+
+    @Benchmark
+    public BufferedImage fullDecode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(original));
+    }
+
+    @Benchmark
+    public BufferedImage subsampledDecode() throws IOException {
+        try (ImageInputStream input = new MemoryCacheImageInputStream(new ByteArrayInputStream(original))) {
+            return decoder.decode(input, maxDimension);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding a thumbnail with the worker's JPEG and PNG writers.
+ *
+ * The encoding parameter is a format, with the compression quality for JPEG, e.g. "jpg:0.85". Run with
+ * {@code -p encoding=...} to try other qualities; the output size is logged when each trial starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(EncodeBenchmark.class);
+
+    @Param({"150", "600", "1200"})
+    public int maxDimension;
+
+    @Param({"jpg:0.75", "jpg:0.85", "jpg:0.95", "png"})
+    public String encoding;
+
+    private BufferedImage thumbnail;
+    private String format;
+    private ImageEncoder encoder;
+    private ByteBufferPool.PooledBuffer buffer;
+
+    @Setup
+    public void setUp() {
+        BufferedImage source = SyntheticCorpus.image("4032x3024");
+        int[] target = RenditionSet.fit(source.getWidth(), source.getHeight(), maxDimension);
+        thumbnail = new SeparableThumbnailEngine().resize(source, target[0], target[1]);
+
+        int separator = encoding.indexOf(':');
+        format = separator < 0 ? encoding : encoding.substring(0, separator);
+        encoder = separator < 0 ? new ImageEncoder() : new ImageEncoder(Float.parseFloat(encoding.substring(separator + 1)));
+        buffer = new ByteBufferPool(1, 1024 * 1024, 4 * 1024 * 1024).acquire();
+        log.info("{} at {}px encodes to {} bytes", encoding, maxDimension, encode());
+    }
+
+    @Benchmark
+    public int encode() {
+        buffer.reset();
+        try (ImageOutputStream output = buffer.toImageOutputStream()) {
+            encoder.write(thumbnail, format, output);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer.size();
+    }
+}
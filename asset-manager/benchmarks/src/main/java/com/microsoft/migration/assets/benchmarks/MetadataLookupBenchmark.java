@@ -0,0 +1,164 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding image metadata by blob key as the table grows: the full scan that listing, deleting and thumbnail
+ * updates used to do through findAll(), against the indexed findByS3Key and findAllByS3KeyIn lookups.
+ *
+ * The table and its unique index are created as Hibernate generates them, in an in-memory H2 database
+ * running in PostgreSQL mode, and queried with the SQL the repositories issue. Absolute times are not those
+ * of Postgres over the network, where every scanned row is also transferred; the point is that the indexed
+ * lookups stay flat with the number of rows while the scan grows linearly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataLookupBenchmark {
+
+    private static final String COLUMNS = "id, filename, content_type, size, s3key, s3url, thumbnail_key, "
+            + "thumbnail_url, uploaded_at, last_modified";
+
+    // Images shown on one gallery page
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private Connection connection;
+    private PreparedStatement findAll;
+    private PreparedStatement findByS3Key;
+    private PreparedStatement findAllByS3KeyIn;
+    private int next;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:metadata-" + rows + ";MODE=PostgreSQL");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("create table image_metadata (id varchar(255) not null, filename varchar(255), "
+                    + "content_type varchar(255), size bigint, s3key varchar(255), s3url varchar(255), "
+                    + "thumbnail_key varchar(255), thumbnail_url varchar(255), uploaded_at timestamp(6), "
+                    + "last_modified timestamp(6), primary key (id))");
+            statement.execute("create unique index idx_image_metadata_s3_key on image_metadata (s3key)");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement insert = connection.prepareStatement(
+                "insert into image_metadata (" + COLUMNS + ") values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            for (int i = 0; i < rows; i++) {
+                String key = key(i);
+                insert.setString(1, "id-" + i);
+                insert.setString(2, "photo-" + i + ".jpg");
+                insert.setString(3, "image/jpeg");
+                insert.setLong(4, 2_500_000L + i);
+                insert.setString(5, key);
+                insert.setString(6, "https://assets.blob.core.windows.net/images/" + key);
+                insert.setString(7, "thumbnails/" + key);
+                insert.setString(8, "https://assets.blob.core.windows.net/images/thumbnails/" + key);
+                insert.setTimestamp(9, now);
+                insert.setTimestamp(10, now);
+                insert.addBatch();
+                if (i % 1000 == 999) {
+                    insert.executeBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        findAll = connection.prepareStatement("select " + COLUMNS + " from image_metadata");
+        findByS3Key = connection.prepareStatement("select " + COLUMNS + " from image_metadata where s3key = ?");
+        StringBuilder in = new StringBuilder("select " + COLUMNS + " from image_metadata where s3key in (");
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            in.append(i == 0 ? "?" : ", ?");
+        }
+        findAllByS3KeyIn = connection.prepareStatement(in.append(')').toString());
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    /**
+     * One key looked up by reading every row, as findAll().stream().filter(...) did
+     */
+    @Benchmark
+    public String scanForKey() throws SQLException {
+        String key = key(nextRow());
+        try (ResultSet result = findAll.executeQuery()) {
+            String found = null;
+            while (result.next()) {
+                String id = result.getString(1);
+                String s3Key = result.getString(5);
+                // Every row is materialized like an entity would be, before the filter looks at it
+                result.getString(2);
+                result.getString(6);
+                result.getString(8);
+                result.getTimestamp(9);
+                if (found == null && key.equals(s3Key)) {
+                    found = id;
+                }
+            }
+            return found;
+        }
+    }
+
+    @Benchmark
+    public String findByS3Key() throws SQLException {
+        findByS3Key.setString(1, key(nextRow()));
+        try (ResultSet result = findByS3Key.executeQuery()) {
+            return result.next() ? result.getString(1) : null;
+        }
+    }
+
+    /**
+     * The metadata of one gallery page
+     */
+    @Benchmark
+    public int findAllByS3KeyIn() throws SQLException {
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            findAllByS3KeyIn.setString(i + 1, key(nextRow()));
+        }
+        int found = 0;
+        try (ResultSet result = findAllByS3KeyIn.executeQuery()) {
+            while (result.next()) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private int nextRow() {
+        next = (next + 7919) % rows;
+        return next;
+    }
+
+    private static String key(int row) {
+        return String.format("%08x-photo-%d.jpg", row * 2654435761L & 0xFFFFFFFFL, row);
+    }
+}
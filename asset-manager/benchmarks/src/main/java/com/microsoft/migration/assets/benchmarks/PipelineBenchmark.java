@@ -0,0 +1,85 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+import com.microsoft.migration.assets.worker.image.RasterPool;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import com.microsoft.migration.assets.worker.util.ByteArrayImageInputStream;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CPU stage of one message as the worker runs it: subsampled decode, the resize cascade for the
+ * thumbnail and renditions, and JPEG encoding into pooled buffers. With pooled set to false every image is
+ * allocated, which shows what the {@link RasterPool} saves in gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    private static final int[] SIZES = {1200, 600, 300, 150};
+
+    @Param({"1920x1080", "4032x3024"})
+    public String resolution;
+
+    @Param({"true", "false"})
+    public boolean pooled;
+
+    private byte[] original;
+    private RasterPool rasterPool;
+    private ImageDecoder decoder;
+    private SeparableThumbnailEngine engine;
+    private ImageEncoder encoder;
+    private ByteBufferPool bufferPool;
+
+    @Setup
+    public void setUp() {
+        original = SyntheticCorpus.encoded(resolution, "jpg");
+        rasterPool = pooled ? new RasterPool(64L * 1024 * 1024) : RasterPool.unpooled();
+        decoder = new ImageDecoder(ImageDecoder.DEFAULT_OVERSAMPLE, rasterPool);
+        engine = new SeparableThumbnailEngine(SeparableThumbnailEngine.Filter.LANCZOS3,
+                SeparableThumbnailEngine.DEFAULT_SHARPEN, rasterPool);
+        encoder = new ImageEncoder(ImageEncoder.DEFAULT_JPEG_QUALITY, rasterPool);
+        bufferPool = new ByteBufferPool(SIZES.length, 256 * 1024, 4 * 1024 * 1024);
+    }
+
+    @Benchmark
+    public long thumbnailAndRenditions() throws IOException {
+        long bytes = 0;
+        try (ImageInputStream input = new ByteArrayImageInputStream(original, 0, original.length)) {
+            BufferedImage decoded = decoder.decode(input, SIZES[0]);
+            for (BufferedImage image : RenditionSet.cascade(decoded, engine, SIZES).values()) {
+                ByteBufferPool.PooledBuffer buffer = bufferPool.acquire();
+                try (ImageOutputStream output = buffer.toImageOutputStream()) {
+                    encoder.write(image, "jpg", output);
+                }
+                bytes += buffer.size();
+                bufferPool.release(buffer);
+            }
+        } finally {
+            rasterPool.recycle();
+        }
+        return bytes;
+    }
+}
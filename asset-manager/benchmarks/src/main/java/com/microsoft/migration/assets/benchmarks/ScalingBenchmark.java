@@ -0,0 +1,102 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.Java2DThumbnailEngine;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizing a decoded original to a thumbnail: the steps of the Java2D engine on their own, and the
+ * separable engine that replaces them by default
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+
+    @Param({"640x480", "1920x1080", "4032x3024"})
+    public String resolution;
+
+    @Param({"150", "600"})
+    public int maxDimension;
+
+    private BufferedImage source;
+    private BufferedImage scaled;
+    private int targetWidth;
+    private int targetHeight;
+    private Java2DThumbnailEngine java2D;
+    private SeparableThumbnailEngine separable;
+
+    @Setup
+    public void setUp() throws IOException {
+        // Decoded from JPEG, so the raster type matches what the worker resizes
+        source = ImageIO.read(new ByteArrayInputStream(SyntheticCorpus.encoded(resolution, "jpg")));
+        int[] target = RenditionSet.fit(source.getWidth(), source.getHeight(), maxDimension);
+        targetWidth = target[0];
+        targetHeight = target[1];
+        java2D = new Java2DThumbnailEngine();
+        separable = new SeparableThumbnailEngine();
+        scaled = java2D.progressiveScaling(source, targetWidth, targetHeight);
+    }
+
+    /**
+     * The progressive scaling threshold only varies for the benchmark that depends on it
+     */
+    @State(Scope.Benchmark)
+    public static class Progressive {
+
+        @Param({"" + Java2DThumbnailEngine.DEFAULT_PROGRESSIVE_THRESHOLD, "2.0", "3.0"})
+        public double progressiveThreshold;
+
+        private Java2DThumbnailEngine engine;
+
+        @Setup
+        public void setUp() {
+            engine = new Java2DThumbnailEngine(progressiveThreshold);
+        }
+    }
+
+    @Benchmark
+    public BufferedImage progressiveScaling(Progressive progressive) {
+        return progressive.engine.progressiveScaling(source, targetWidth, targetHeight);
+    }
+
+    @Benchmark
+    public BufferedImage scaleImage() {
+        return java2D.scaleImage(source, targetWidth, targetHeight);
+    }
+
+    @Benchmark
+    public BufferedImage sharpenImage() {
+        return java2D.sharpenImage(scaled);
+    }
+
+    @Benchmark
+    public BufferedImage java2DResize() {
+        return java2D.resize(source, targetWidth, targetHeight);
+    }
+
+    @Benchmark
+    public BufferedImage separableResize() {
+        return separable.resize(source, targetWidth, targetHeight);
+    }
+}
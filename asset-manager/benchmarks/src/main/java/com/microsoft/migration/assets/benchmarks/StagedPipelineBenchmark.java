@@ -0,0 +1,141 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+import com.microsoft.migration.assets.worker.image.RasterPool;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import com.microsoft.migration.assets.worker.service.CpuStageExecutor;
+import com.microsoft.migration.assets.worker.util.ByteArrayImageInputStream;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second through the worker, with download and upload simulated as a fixed latency around the
+ * CPU stage of {@link PipelineBenchmark}.
+ *
+ * In the monolithic pipeline each listener thread downloads, decodes, resizes, encodes and uploads, so the
+ * cores sit idle while it waits on storage; that is the model the worker had before, with threads=1 being
+ * the Spring default of one consumer. In the staged pipeline the listener threads only do the I/O and hand
+ * the CPU work to a {@link CpuStageExecutor} of the given number of threads, with enough listeners to keep
+ * it busy. With the I/O hidden, the staged throughput should grow close to linearly with the CPU threads
+ * up to the number of cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StagedPipelineBenchmark {
+
+    private static final int[] SIZES = {1200, 600, 300, 150};
+    private static final int MESSAGES = 64;
+
+    // Listener threads per CPU thread in the staged pipeline, the most the listener container grows to by default
+    private static final int LISTENERS_PER_CPU_THREAD = 4;
+
+    @Param({"monolithic", "staged"})
+    public String pipeline;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    // Download of the original and upload of the results, for a few MB to Blob Storage
+    @Param({"100"})
+    public int ioMillis;
+
+    private byte[] original;
+    private ImageDecoder decoder;
+    private SeparableThumbnailEngine engine;
+    private ImageEncoder encoder;
+    private ByteBufferPool bufferPool;
+    private ExecutorService listeners;
+    private CpuStageExecutor cpuStage;
+
+    @Setup
+    public void setUp() {
+        original = SyntheticCorpus.encoded("1920x1080", "jpg");
+        decoder = new ImageDecoder();
+        engine = new SeparableThumbnailEngine();
+        encoder = new ImageEncoder();
+        boolean staged = "staged".equals(pipeline);
+        int listenerThreads = staged ? threads * LISTENERS_PER_CPU_THREAD : threads;
+        bufferPool = new ByteBufferPool(listenerThreads * SIZES.length, 256 * 1024, 4 * 1024 * 1024);
+        listeners = Executors.newFixedThreadPool(listenerThreads);
+        cpuStage = staged ? new CpuStageExecutor(threads, 0, 0.5) : null;
+    }
+
+    @TearDown
+    public void tearDown() {
+        listeners.shutdownNow();
+        if (cpuStage != null) {
+            cpuStage.destroy();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public long process() throws Exception {
+        List<Future<Long>> results = new ArrayList<>(MESSAGES);
+        for (int i = 0; i < MESSAGES; i++) {
+            results.add(listeners.submit(this::handle));
+        }
+        long bytes = 0;
+        for (Future<Long> result : results) {
+            bytes += result.get();
+        }
+        return bytes;
+    }
+
+    private long handle() throws Exception {
+        // Download
+        Thread.sleep(ioMillis / 2);
+        long bytes = cpuStage != null
+                ? cpuStage.execute(ProcessingLane.INTERACTIVE, this::thumbnailAndRenditions)
+                : thumbnailAndRenditions();
+        // Upload
+        Thread.sleep(ioMillis - ioMillis / 2);
+        return bytes;
+    }
+
+    private long thumbnailAndRenditions() throws IOException {
+        long bytes = 0;
+        try (ImageInputStream input = new ByteArrayImageInputStream(original, 0, original.length)) {
+            BufferedImage decoded = decoder.decode(input, SIZES[0]);
+            for (BufferedImage image : RenditionSet.cascade(decoded, engine, SIZES).values()) {
+                ByteBufferPool.PooledBuffer buffer = bufferPool.acquire();
+                try (ImageOutputStream output = buffer.toImageOutputStream()) {
+                    encoder.write(image, "jpg", output);
+                }
+                bytes += buffer.size();
+                bufferPool.release(buffer);
+            }
+        }
+        return bytes;
+    }
+}
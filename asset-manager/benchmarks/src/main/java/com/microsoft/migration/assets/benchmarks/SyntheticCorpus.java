@@ -0,0 +1,120 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic images standing in for uploaded photos.
+ *
+ * Images are drawn from a fixed seed, so every run and every fork benchmarks the same pixels. They mix smooth
+ * gradients, hard edges, text and per-pixel noise, which keeps JPEG and PNG compression from collapsing on
+ * flat areas the way it would for a blank test image.
+ */
+public final class SyntheticCorpus {
+
+    private static final long SEED = 0x5EED_1A6EL;
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * Parse a resolution parameter like "1920x1080"
+     */
+    public static int[] dimensions(String resolution) {
+        int separator = resolution.indexOf('x');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Resolution must be <width>x<height>: " + resolution);
+        }
+        return new int[] {Integer.parseInt(resolution.substring(0, separator)),
+                Integer.parseInt(resolution.substring(separator + 1))};
+    }
+
+    /**
+     * A photo-like RGB image of the given resolution
+     */
+    public static BufferedImage image(String resolution) {
+        int[] size = dimensions(resolution);
+        return image(size[0], size[1]);
+    }
+
+    public static BufferedImage image(int width, int height) {
+        Random random = new Random(SEED ^ ((long) width << 32 | height));
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+
+        g.setPaint(new GradientPaint(0, 0, new Color(40, 90, 160), width, height, new Color(230, 180, 90)));
+        g.fillRect(0, 0, width, height);
+
+        int unit = Math.max(Math.min(width, height) / 20, 1);
+        for (int i = 0; i < 60; i++) {
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 160));
+            int x = random.nextInt(width);
+            int y = random.nextInt(height);
+            int w = unit + random.nextInt(unit * 4);
+            int h = unit + random.nextInt(unit * 4);
+            if (i % 3 == 0) {
+                g.fillOval(x, y, w, h);
+            } else if (i % 3 == 1) {
+                g.fillRect(x, y, w, h);
+            } else {
+                g.setStroke(new BasicStroke(Math.max(unit / 8f, 1f)));
+                g.drawLine(x, y, x + w * 3, y + h);
+            }
+        }
+
+        g.setColor(Color.WHITE);
+        g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, Math.max(unit, 8)));
+        g.drawString("asset-manager benchmark " + width + "x" + height, unit, height - unit);
+        g.dispose();
+
+        // Sensor-like noise, so encoders see the fine detail of a real photo
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(17) - 8;
+                int rgb = row[x];
+                row[x] = clamp((rgb >> 16 & 0xFF) + noise) << 16
+                        | clamp((rgb >> 8 & 0xFF) + noise) << 8
+                        | clamp((rgb & 0xFF) + noise);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * The image of the given resolution encoded the way originals are uploaded, "jpg" or "png"
+     */
+    public static byte[] encoded(String resolution, String format) {
+        return encode(image(resolution), format, ImageEncoder.DEFAULT_JPEG_QUALITY);
+    }
+
+    public static byte[] encode(BufferedImage image, String format, float jpegQuality) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = new MemoryCacheImageOutputStream(bytes)) {
+            new ImageEncoder(jpegQuality).write(image, format, output);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int clamp(int value) {
+        return Math.min(Math.max(value, 0), 255);
+    }
+}
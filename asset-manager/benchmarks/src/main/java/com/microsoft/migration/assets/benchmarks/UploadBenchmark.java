@@ -0,0 +1,202 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.core.RequestContext;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Getting an uploaded file from the multipart request body to the storage client.
+ *
+ * The streamed upload reads the file part straight from the request through FileUpload's item iterator, as
+ * S3Controller.uploadObject does. The buffered upload first spools the part to a temporary file and then
+ * reads it back, as the servlet container does for Spring's MultipartFile with the default file size
+ * threshold of 0. Both hash the content on the way, like AwsS3Service does while uploading.
+ *
+ * The storage client is a sink here; block upload throughput is measured by {@link BlockUploadBenchmark}.
+ * The request body is generated as it is read, so the largest size needs no heap.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class UploadBenchmark {
+
+    private static final String BOUNDARY = "----asset-manager-benchmark";
+
+    @Param({"1", "16", "128", "512"})
+    public int megabytes;
+
+    private Path spoolDirectory;
+    private MessageDigest digest;
+
+    @Setup
+    public void setUp() throws IOException, NoSuchAlgorithmException {
+        spoolDirectory = Files.createTempDirectory("upload-benchmark");
+        digest = MessageDigest.getInstance("SHA-256");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(spoolDirectory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+        FileItemInputIterator items = upload.getItemIterator(request());
+        while (items.hasNext()) {
+            FileItemInput item = items.next();
+            if (!item.isFormField()) {
+                try (InputStream content = item.getInputStream()) {
+                    return store(content);
+                }
+            }
+        }
+        throw new IllegalStateException("No file part");
+    }
+
+    @Benchmark
+    public long buffered() throws IOException {
+        DiskFileItemFactory factory = DiskFileItemFactory.builder()
+                .setPath(spoolDirectory)
+                .setBufferSize(0)
+                .get();
+        List<DiskFileItem> items = new JakartaServletFileUpload<>(factory).parseRequest(request());
+        try {
+            for (DiskFileItem item : items) {
+                if (!item.isFormField()) {
+                    try (InputStream content = item.getInputStream()) {
+                        return store(content);
+                    }
+                }
+            }
+            throw new IllegalStateException("No file part");
+        } finally {
+            for (DiskFileItem item : items) {
+                item.delete();
+            }
+        }
+    }
+
+    private long store(InputStream content) throws IOException {
+        digest.reset();
+        try (DigestOutputStream sink = new DigestOutputStream(OutputStream.nullOutputStream(), digest)) {
+            return content.transferTo(sink);
+        }
+    }
+
+    private RequestContext request() {
+        long size = megabytes * 1024L * 1024L;
+        byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"original.jpg\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        long length = head.length + size + tail.length;
+        return new RequestContext() {
+            @Override
+            public String getCharacterEncoding() {
+                return StandardCharsets.UTF_8.name();
+            }
+
+            @Override
+            public long getContentLength() {
+                return length;
+            }
+
+            @Override
+            public String getContentType() {
+                return "multipart/form-data; boundary=" + BOUNDARY;
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return new SequenceInputStream(new SequenceInputStream(
+                        new ByteArrayInputStream(head), new FileContent(size)), new ByteArrayInputStream(tail));
+            }
+
+            @Override
+            public boolean isMultipartRelated() {
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Pseudo-random bytes of the given length that never contain the boundary
+     */
+    static final class FileContent extends InputStream {
+        private final byte[] block = new byte[64 * 1024];
+        private long remaining;
+        private int position = block.length;
+
+        FileContent(long size) {
+            this.remaining = size;
+            new Random(size).nextBytes(block);
+            for (int i = 0; i < block.length; i++) {
+                // Keep '-' out, so no run of the content can be mistaken for the boundary
+                if (block[i] == '-') {
+                    block[i] = '_';
+                }
+            }
+        }
+
+        @Override
+        public int read() {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remaining == 0) {
+                return -1;
+            }
+            if (position == block.length) {
+                position = 0;
+            }
+            int count = (int) Math.min(Math.min(length, block.length - position), remaining);
+            System.arraycopy(block, position, buffer, offset, count);
+            position += count;
+            remaining -= count;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.microsoft.migration.assets.benchmarks;
+
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import com.microsoft.migration.assets.worker.image.ImageQuality;
+import com.microsoft.migration.assets.worker.image.Java2DThumbnailEngine;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Renders the benchmark corpus the way the worker does and holds the result to {@link ImageQuality#MIN_PSNR_DB}:
+ * each step of the separable engine against the same step of the Java2D engine, and the subsampled decode
+ * against a full decode.
+ */
+class ThumbnailQualityTest {
+
+    @ParameterizedTest(name = "{0} to {1}")
+    @CsvSource({
+            "640x480, 150", "640x480, 300",
+            "1920x1080, 150", "1920x1080, 300", "1920x1080, 600", "1920x1080, 1200",
+            "4032x3024, 150", "4032x3024, 600", "4032x3024, 1200",
+            "1080x1920, 300",
+    })
+    void separableResamplingMatchesJava2D(String resolution, int maxDimension) throws IOException {
+        BufferedImage source = decode(SyntheticCorpus.encoded(resolution, "jpg"), new ImageDecoder(), maxDimension);
+        int[] target = RenditionSet.fit(source.getWidth(), source.getHeight(), maxDimension);
+
+        BufferedImage expected = new Java2DThumbnailEngine().progressiveScaling(source, target[0], target[1]);
+        BufferedImage actual = new SeparableThumbnailEngine(SeparableThumbnailEngine.Filter.LANCZOS3, 0f)
+                .resize(source, target[0], target[1]);
+
+        assertThat(ImageQuality.psnr(expected, actual)).isGreaterThanOrEqualTo(ImageQuality.MIN_PSNR_DB);
+    }
+
+    @ParameterizedTest(name = "{0} to {1}")
+    @CsvSource({
+            "640x480, 150", "1920x1080, 150", "1920x1080, 600", "4032x3024, 300", "4032x3024, 1200",
+    })
+    void separableSharpeningMatchesJava2D(String resolution, int maxDimension) throws IOException {
+        BufferedImage source = decode(SyntheticCorpus.encoded(resolution, "jpg"), new ImageDecoder(), maxDimension);
+        int[] target = RenditionSet.fit(source.getWidth(), source.getHeight(), maxDimension);
+
+        // Both sharpen the same resampled pixels, the Java2D kernel after the resize, the separable one within it
+        BufferedImage resampled = new SeparableThumbnailEngine(SeparableThumbnailEngine.Filter.LANCZOS3, 0f)
+                .resize(source, target[0], target[1]);
+        BufferedImage expected = new Java2DThumbnailEngine().sharpenImage(resampled);
+        BufferedImage actual = new SeparableThumbnailEngine().resize(source, target[0], target[1]);
+
+        assertThat(ImageQuality.psnr(expected, actual)).isGreaterThanOrEqualTo(ImageQuality.MIN_PSNR_DB);
+    }
+
+    @ParameterizedTest(name = "{0} to {1}")
+    @CsvSource({
+            "1920x1080, 150", "1920x1080, 300",
+            "4032x3024, 150", "4032x3024, 600",
+    })
+    void subsampledDecodeMatchesFullDecode(String resolution, int maxDimension) throws IOException {
+        byte[] original = SyntheticCorpus.encoded(resolution, "jpg");
+        SeparableThumbnailEngine engine = new SeparableThumbnailEngine();
+
+        BufferedImage expected = resize(engine, ImageIO.read(new ByteArrayInputStream(original)), maxDimension);
+        BufferedImage actual = resize(engine, decode(original, new ImageDecoder(), maxDimension), maxDimension);
+
+        assertThat(ImageQuality.psnr(expected, actual)).isGreaterThanOrEqualTo(ImageQuality.MIN_PSNR_DB);
+    }
+
+    private static BufferedImage decode(byte[] original, ImageDecoder decoder, int maxDimension) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(new ByteArrayInputStream(original))) {
+            return decoder.decode(stream, maxDimension);
+        }
+    }
+
+    private static BufferedImage resize(SeparableThumbnailEngine engine, BufferedImage source, int maxDimension) {
+        int[] target = RenditionSet.fit(source.getWidth(), source.getHeight(), maxDimension);
+        return engine.resize(source, target[0], target[1]);
+    }
+}
@@ -303,7 +303,7 @@ echo Creating Dockerfile for worker module...
 (
 echo FROM eclipse-temurin:21-jre-alpine
 echo WORKDIR /app
-echo COPY target/*.jar app.jar
+echo COPY target/*-exec.jar app.jar
 echo ENTRYPOINT ["java", "-jar", "app.jar"]
 ) > worker\Dockerfile
 if %ERRORLEVEL% neq 0 (
@@ -286,7 +286,7 @@ echo "Creating Dockerfile for worker module..."
 cat > worker/Dockerfile << EOF
 FROM eclipse-temurin:21-jre-alpine
 WORKDIR /app
-COPY target/*.jar app.jar
+COPY target/*-exec.jar app.jar
 ENTRYPOINT ["java", "-jar", "app.jar"]
 EOF
 if [ $? -ne 0 ]; then
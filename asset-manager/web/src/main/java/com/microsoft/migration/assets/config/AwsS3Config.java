@@ -3,9 +3,12 @@ package com.microsoft.migration.assets.config;
 import com.azure.identity.DefaultAzureCredentialBuilder;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.batch.BlobBatchAsyncClient;
+import com.azure.storage.blob.batch.BlobBatchClientBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 
 @Configuration
 public class AwsS3Config {
@@ -13,11 +16,28 @@ public class AwsS3Config {
     @Value("${azure.storage.account-name}")
     private String accountName;
 
+    // Set to run against Azurite, which doesn't accept Entra ID credentials
+    @Value("${azure.storage.connection-string:}")
+    private String connectionString;
+
     @Bean
     public BlobServiceClient blobServiceClient() {
+        if (StringUtils.hasText(connectionString)) {
+            return new BlobServiceClientBuilder()
+                    .connectionString(connectionString)
+                    .buildClient();
+        }
         return new BlobServiceClientBuilder()
                 .endpoint("https://" + accountName + ".blob.core.windows.net")
                 .credential(new DefaultAzureCredentialBuilder().build())
                 .buildClient();
     }
-}
\ No newline at end of file
+
+    /**
+     * Async, so a bulk delete can have several batches in flight on the HTTP client's shared I/O threads
+     */
+    @Bean
+    public BlobBatchAsyncClient blobBatchAsyncClient(BlobServiceClient blobServiceClient) {
+        return new BlobBatchClientBuilder(blobServiceClient).buildAsyncClient();
+    }
+}
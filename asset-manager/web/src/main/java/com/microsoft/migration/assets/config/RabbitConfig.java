@@ -6,21 +6,38 @@ import com.azure.core.exception.ResourceNotFoundException;
 import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClient;
 import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClientBuilder;
 import com.azure.messaging.servicebus.administration.models.CreateQueueOptions;
+import com.azure.messaging.servicebus.administration.models.CreateSubscriptionOptions;
+import com.azure.messaging.servicebus.administration.models.CreateTopicOptions;
 import com.azure.messaging.servicebus.administration.models.QueueProperties;
+import com.azure.messaging.servicebus.administration.models.SubscriptionProperties;
+import com.azure.messaging.servicebus.administration.models.TopicProperties;
 import com.azure.spring.cloud.autoconfigure.implementation.servicebus.properties.AzureServiceBusProperties;
 import com.azure.spring.messaging.ConsumerIdentifier;
 import com.azure.spring.messaging.PropertiesSupplier;
+import com.azure.spring.cloud.service.servicebus.properties.ServiceBusEntityType;
 import com.azure.spring.messaging.servicebus.core.properties.ProcessorProperties;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
+import java.util.UUID;
 
 @Configuration
 public class RabbitConfig {
     public static final String IMAGE_PROCESSING_QUEUE = "image-processing";
     public static final String RETRY_QUEUE = "retry-queue";
+    // Lane for bulk imports and large originals, with its own retry queue so retries stay in their lane
+    public static final String BULK_IMAGE_PROCESSING_QUEUE = "image-processing.bulk";
+    public static final String BULK_RETRY_QUEUE = "retry-queue.bulk";
     public static final Duration RETRY_QUEUE_TTL = Duration.ofMinutes(1);
+    // Every web node has to see every event, so they go to a topic that each node reads through its own
+    // subscription. Queues and topics share one namespace, hence not the name of the former thumbnail-events queue.
+    public static final String THUMBNAIL_EVENTS_TOPIC = "thumbnail-events-topic";
+    public static final Duration THUMBNAIL_EVENTS_TTL = Duration.ofMinutes(5);
+    // Subscriptions of nodes that have gone away are removed once nobody has received from them for this long,
+    // the shortest idle time Service Bus allows
+    public static final Duration THUMBNAIL_EVENTS_SUBSCRIPTION_IDLE = Duration.ofMinutes(5);
 
     @Bean
     public ServiceBusAdministrationClient adminClient(AzureServiceBusProperties properties, TokenCredential credential) {
@@ -31,40 +48,59 @@ public class RabbitConfig {
 
     @Bean
     public QueueProperties retryQueue(ServiceBusAdministrationClient adminClient) {
+        return createRetryQueue(adminClient, RETRY_QUEUE);
+    }
+
+    @Bean
+    public QueueProperties imageProcessingQueue(ServiceBusAdministrationClient adminClient, QueueProperties retryQueue) {
+        return createProcessingQueue(adminClient, IMAGE_PROCESSING_QUEUE, retryQueue);
+    }
+
+    @Bean
+    public QueueProperties bulkRetryQueue(ServiceBusAdministrationClient adminClient) {
+        return createRetryQueue(adminClient, BULK_RETRY_QUEUE);
+    }
+
+    @Bean
+    public QueueProperties bulkImageProcessingQueue(ServiceBusAdministrationClient adminClient, QueueProperties bulkRetryQueue) {
+        return createProcessingQueue(adminClient, BULK_IMAGE_PROCESSING_QUEUE, bulkRetryQueue);
+    }
+
+    private QueueProperties createRetryQueue(ServiceBusAdministrationClient adminClient, String name) {
         try {
-            return adminClient.getQueue(RETRY_QUEUE);
+            return adminClient.getQueue(name);
         } catch (ResourceNotFoundException e) {
             try {
                 CreateQueueOptions options = new CreateQueueOptions()
                     .setDefaultMessageTimeToLive(RETRY_QUEUE_TTL)
                     .setDeadLetteringOnMessageExpiration(true);
-                return adminClient.createQueue(RETRY_QUEUE, options);
+                return adminClient.createQueue(name, options);
             } catch (ResourceExistsException ex) {
                 // Queue was created by another instance in the meantime
-                return adminClient.getQueue(RETRY_QUEUE);
+                return adminClient.getQueue(name);
             }
         }
     }
 
-    @Bean
-    public QueueProperties imageProcessingQueue(ServiceBusAdministrationClient adminClient, QueueProperties retryQueue) {
+    private QueueProperties createProcessingQueue(ServiceBusAdministrationClient adminClient, String name,
+                                                  QueueProperties retryQueue) {
         QueueProperties queue;
         try {
-            queue = adminClient.getQueue(IMAGE_PROCESSING_QUEUE);
+            queue = adminClient.getQueue(name);
         } catch (ResourceNotFoundException e) {
             try {
                 CreateQueueOptions options = new CreateQueueOptions()
-                    .setForwardDeadLetteredMessagesTo(RETRY_QUEUE);
-                queue = adminClient.createQueue(IMAGE_PROCESSING_QUEUE, options);
+                    .setForwardDeadLetteredMessagesTo(retryQueue.getName());
+                queue = adminClient.createQueue(name, options);
             } catch (ResourceExistsException ex) {
                 // Queue was created by another instance in the meantime
-                queue = adminClient.getQueue(IMAGE_PROCESSING_QUEUE);
+                queue = adminClient.getQueue(name);
             }
         }
         
         // Configure retry queue's DLQ forwarding now that image processing queue exists
         try {
-            retryQueue.setForwardDeadLetteredMessagesTo(IMAGE_PROCESSING_QUEUE);
+            retryQueue.setForwardDeadLetteredMessagesTo(name);
             adminClient.updateQueue(retryQueue);
         } catch (Exception ex) {
             // Ignore update errors since basic functionality will still work
@@ -73,11 +109,47 @@ public class RabbitConfig {
         return queue;
     }
 
+    @Bean
+    public TopicProperties thumbnailEventsTopic(ServiceBusAdministrationClient adminClient) {
+        try {
+            return adminClient.getTopic(THUMBNAIL_EVENTS_TOPIC);
+        } catch (ResourceNotFoundException e) {
+            try {
+                // Stale notifications are useless to the gallery, let them expire instead of piling up
+                CreateTopicOptions options = new CreateTopicOptions()
+                    .setDefaultMessageTimeToLive(THUMBNAIL_EVENTS_TTL);
+                return adminClient.createTopic(THUMBNAIL_EVENTS_TOPIC, options);
+            } catch (ResourceExistsException ex) {
+                // Topic was created by another instance in the meantime
+                return adminClient.getTopic(THUMBNAIL_EVENTS_TOPIC);
+            }
+        }
+    }
+
+    /**
+     * This node's subscription to thumbnail events, under a name of its own so it receives every event
+     */
+    @Bean
+    @ConditionalOnProperty(name = "thumbnail.events.source", havingValue = "servicebus", matchIfMissing = true)
+    public SubscriptionProperties thumbnailEventsSubscription(ServiceBusAdministrationClient adminClient,
+                                                              TopicProperties thumbnailEventsTopic) {
+        String name = "web-" + UUID.randomUUID().toString().replace("-", "");
+        CreateSubscriptionOptions options = new CreateSubscriptionOptions()
+            .setAutoDeleteOnIdle(THUMBNAIL_EVENTS_SUBSCRIPTION_IDLE)
+            .setDefaultMessageTimeToLive(THUMBNAIL_EVENTS_TTL);
+        return adminClient.createSubscription(thumbnailEventsTopic.getName(), name, options);
+    }
+
     @Bean
     public PropertiesSupplier<ConsumerIdentifier, ProcessorProperties> propertiesSupplier() {
         return identifier -> {
             ProcessorProperties processorProperties = new ProcessorProperties();
             processorProperties.setAutoComplete(false);
+            if (THUMBNAIL_EVENTS_TOPIC.equals(identifier.getDestination())) {
+                // Everything else is consumed from queues, the default entity type
+                processorProperties.setEntityType(ServiceBusEntityType.TOPIC);
+                processorProperties.setSubscriptionName(identifier.getGroup());
+            }
             return processorProperties;
         };
     }
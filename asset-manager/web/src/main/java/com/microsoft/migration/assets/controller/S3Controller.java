@@ -1,20 +1,52 @@
 package com.microsoft.migration.assets.controller;
 
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.S3DeleteResult;
+import com.microsoft.migration.assets.model.S3DirectUpload;
+import com.microsoft.migration.assets.model.S3ObjectProperties;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
+import com.microsoft.migration.assets.service.DirectUploadCapable;
 import com.microsoft.migration.assets.service.StorageService;
+import com.microsoft.migration.assets.service.ThumbnailEventBroadcaster;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
+import org.apache.commons.fileupload2.core.DiskFileItem;
+import org.apache.commons.fileupload2.core.DiskFileItemFactory;
+import org.apache.commons.fileupload2.core.FileItemInput;
+import org.apache.commons.fileupload2.core.FileItemInputIterator;
+import org.apache.commons.fileupload2.jakarta.servlet6.JakartaServletFileUpload;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.FlashMap;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
+import org.springframework.web.servlet.support.RequestContextUtils;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
 import java.util.Optional;
 
@@ -23,44 +55,167 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class S3Controller {
 
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_BULK_DELETE_SIZE = 1000;
+    // Set to "bulk" by imports and backfills, so their images don't hold up interactive uploads
+    private static final String PROCESSING_LANE_HEADER = "X-Processing-Lane";
+
+    // Tomcat's sendfile request attributes, see its DefaultServlet
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     private final StorageService storageService;
+    private final ThumbnailEventBroadcaster thumbnailEventBroadcaster;
+
+    @Value("${storage.list.page-size:24}")
+    private int defaultPageSize;
+
+    @Value("${storage.view.cache-max-age:0s}")
+    private Duration viewCacheMaxAge;
+
+    @Value("${storage.upload.max-file-size:512MB}")
+    private DataSize maxUploadSize;
 
     @GetMapping
-    public String listObjects(Model model) {
-        List<S3StorageItem> objects = storageService.listObjects();
-        model.addAttribute("objects", objects);
+    public String listObjects(@RequestParam(required = false) String cursor,
+                              @RequestParam(required = false) Integer size,
+                              Model model) {
+        addPage(model, cursor, size);
         return "list";
     }
 
+    /**
+     * Render the next page of gallery cards only, used by the infinite scroll in list.html
+     */
+    @GetMapping("/page")
+    public String listObjectsPage(@RequestParam(required = false) String cursor,
+                                  @RequestParam(required = false) Integer size,
+                                  Model model) {
+        addPage(model, cursor, size);
+        return "list :: cards";
+    }
+
+    private void addPage(Model model, String cursor, Integer size) {
+        int pageSize = Math.min(Math.max(size != null ? size : defaultPageSize, 1), MAX_PAGE_SIZE);
+        S3StoragePage page = storageService.listObjects(cursor, pageSize);
+        model.addAttribute("objects", page.getItems());
+        model.addAttribute("nextCursor", page.getNextCursor());
+        model.addAttribute("pageSize", pageSize);
+    }
+
+    /**
+     * Server-sent events stream that notifies the gallery when thumbnails become available
+     */
+    @GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter events() {
+        return thumbnailEventBroadcaster.register();
+    }
+
     @GetMapping("/upload")
-    public String uploadForm() {
+    public String uploadForm(Model model) {
+        model.addAttribute("maxUploadSize", maxUploadSize.toMegabytes());
+        model.addAttribute("directUpload", storageService instanceof DirectUploadCapable);
         return "upload";
     }
 
     @PostMapping("/upload")
-    public String uploadObject(@RequestParam("file") MultipartFile file, RedirectAttributes redirectAttributes) {
+    public String uploadObject(HttpServletRequest request, RedirectAttributes redirectAttributes) {
         try {
-            if (file.isEmpty()) {
-                redirectAttributes.addFlashAttribute("error", "Please select a file to upload");
-                return "redirect:/s3/upload";
+            // The multipart body is read as a stream, so the file goes straight through to storage
+            // instead of being buffered to disk by the servlet container first
+            JakartaServletFileUpload<DiskFileItem, DiskFileItemFactory> upload = new JakartaServletFileUpload<>();
+            upload.setFileSizeMax(maxUploadSize.toBytes());
+            FileItemInputIterator items = upload.getItemIterator(request);
+            while (items.hasNext()) {
+                FileItemInput item = items.next();
+                if (item.isFormField() || !"file".equals(item.getFieldName())) {
+                    continue;
+                }
+
+                try (PushbackInputStream content = new PushbackInputStream(item.getInputStream())) {
+                    // Check for an empty part without consuming it
+                    int first = content.read();
+                    if (!StringUtils.hasText(item.getName()) || first < 0) {
+                        break;
+                    }
+                    content.unread(first);
+
+                    // Some browsers send the full client path; keep only the file name, without any ".." segments
+                    String filename = StringUtils.getFilename(StringUtils.cleanPath(item.getName()));
+                    if (!StringUtils.hasText(filename) || filename.equals("..")) {
+                        redirectAttributes.addFlashAttribute("error", "Invalid file name: " + item.getName());
+                        return "redirect:/s3/upload";
+                    }
+
+                    storageService.uploadObject(filename, item.getContentType(), content,
+                            ProcessingLane.fromName(request.getHeader(PROCESSING_LANE_HEADER)));
+                }
+                redirectAttributes.addFlashAttribute("success", "File uploaded successfully");
+                return "redirect:/s3";
             }
 
-            storageService.uploadObject(file);
-            redirectAttributes.addFlashAttribute("success", "File uploaded successfully");
-            return "redirect:/s3";
+            redirectAttributes.addFlashAttribute("error", "Please select a file to upload");
+            return "redirect:/s3/upload";
         } catch (IOException e) {
             redirectAttributes.addFlashAttribute("error", "Failed to upload file: " + e.getMessage());
             return "redirect:/s3/upload";
         }
     }
     
+    /**
+     * Start an upload that the browser sends straight to storage, returning where and how to PUT the file
+     */
+    @PostMapping("/upload/initiate")
+    @ResponseBody
+    public ResponseEntity<S3DirectUpload> initiateUpload(@RequestParam String filename,
+                                                         @RequestParam String contentType,
+                                                         @RequestParam long size) {
+        if (!(storageService instanceof DirectUploadCapable directUpload)) {
+            return ResponseEntity.notFound().build();
+        }
+        String name = StringUtils.getFilename(StringUtils.cleanPath(filename));
+        if (!StringUtils.hasText(name) || !contentType.startsWith("image/") || size <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (size > maxUploadSize.toBytes()) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+        return ResponseEntity.ok(directUpload.initiateDirectUpload(name, contentType));
+    }
+
+    /**
+     * Called once the browser has stored the file, to record it and queue it for thumbnail generation
+     */
+    @PostMapping("/upload/complete")
+    public ResponseEntity<Void> completeUpload(@RequestParam String key,
+                                               @RequestHeader(name = PROCESSING_LANE_HEADER, required = false) String lane,
+                                               HttpServletRequest request,
+                                               HttpServletResponse response) {
+        if (!(storageService instanceof DirectUploadCapable directUpload)) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            directUpload.completeDirectUpload(key, ProcessingLane.fromName(lane));
+        } catch (FileNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        // Shown on the gallery page the browser navigates to next
+        FlashMap flashMap = RequestContextUtils.getOutputFlashMap(request);
+        flashMap.put("success", "File uploaded successfully");
+        RequestContextUtils.saveOutputFlashMap("/s3", request, response);
+        return ResponseEntity.noContent().build();
+    }
+
     @GetMapping("/view-page/{key}")
     public String viewObjectPage(@PathVariable String key, Model model, RedirectAttributes redirectAttributes) {
         try {
-            // Find the object in the list of objects
-            Optional<S3StorageItem> foundObject = storageService.listObjects().stream()
-                    .filter(obj -> obj.getKey().equals(key))
-                    .findFirst();
+            Optional<S3StorageItem> foundObject = storageService.getObjectInfo(key);
             
             if (foundObject.isPresent()) {
                 model.addAttribute("object", foundObject.get());
@@ -76,20 +231,128 @@ public class S3Controller {
     }
 
     @GetMapping("/view/{key}")
-    public ResponseEntity<InputStreamResource> viewObject(@PathVariable String key) {
+    public ResponseEntity<StreamingResponseBody> viewObject(@PathVariable String key, ServletWebRequest webRequest) {
+        S3ObjectProperties properties;
         try {
-            InputStream inputStream = storageService.getObject(key);
-            
-            HttpHeaders headers = new HttpHeaders();
-            // Use a generic content type if we don't know the exact type
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(new InputStreamResource(inputStream));
+            properties = storageService.getObjectProperties(key);
         } catch (IOException e) {
             return ResponseEntity.notFound().build();
         }
+
+        // Sets the 304 status and validator headers when the client's copy is still current
+        long lastModified = properties.getLastModified().toEpochMilli();
+        if (webRequest.checkNotModified(properties.getETag(), lastModified)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).build();
+        }
+
+        long size = properties.getSize();
+        long start = 0;
+        long end = size - 1;
+        HttpStatus status = HttpStatus.OK;
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(properties.getContentType() != null
+                ? MediaType.parseMediaType(properties.getContentType())
+                : MediaType.APPLICATION_OCTET_STREAM);
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        headers.setCacheControl(viewCacheMaxAge.isZero()
+                ? CacheControl.noCache()
+                : CacheControl.maxAge(viewCacheMaxAge).cachePrivate());
+
+        String rangeHeader = webRequest.getHeader(HttpHeaders.RANGE);
+        if (rangeHeader != null && isRangeCurrent(webRequest.getHeader(HttpHeaders.IF_RANGE), properties, Instant.now())) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(rangeHeader);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            // Multiple ranges would need a multipart body; the full content is a valid answer to those
+            if (ranges.size() == 1) {
+                HttpRange range = ranges.get(0);
+                try {
+                    start = range.getRangeStart(size);
+                    end = range.getRangeEnd(size);
+                } catch (IllegalArgumentException e) {
+                    start = size;
+                }
+                if (start >= size || start > end) {
+                    headers.set(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(headers).build();
+                }
+                status = HttpStatus.PARTIAL_CONTENT;
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long offset = start;
+        long length = end - start + 1;
+        headers.setContentLength(length);
+
+        if (HttpMethod.HEAD.matches(webRequest.getRequest().getMethod()) || length == 0) {
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+
+        // Local files go to the socket through the container's sendfile support, without passing through the JVM heap
+        Optional<Path> localFile = storageService.getLocalFile(key);
+        HttpServletRequest request = webRequest.getRequest();
+        if (localFile.isPresent() && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, localFile.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, offset);
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, offset + length);
+            return ResponseEntity.status(status).headers(headers).build();
+        }
+
+        StreamingResponseBody body = output -> storageService.transferTo(key, offset, length, output);
+        return ResponseEntity.status(status).headers(headers).body(body);
+    }
+
+    /**
+     * Serve a rendition stored under the renditions prefix of the given key
+     */
+    @GetMapping("/view/renditions/{key}/{name}")
+    public ResponseEntity<StreamingResponseBody> viewRendition(@PathVariable String key, @PathVariable String name,
+                                                               ServletWebRequest webRequest) {
+        return viewObject(storageService.getRenditionPrefix(key) + name, webRequest);
+    }
+
+    /**
+     * A Range request only applies if its If-Range validator, when present, still matches the object.
+     * If-Range takes a strong comparison (RFC 9110, 13.1.5): weak entity tags never match, and a date only
+     * matches a Last-Modified that is exactly the same and strong.
+     */
+    static boolean isRangeCurrent(String ifRange, S3ObjectProperties properties, Instant now) {
+        if (ifRange == null) {
+            return true;
+        }
+        String etag = properties.getETag();
+        boolean weak = etag == null || etag.startsWith("W/");
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return !weak && ifRange.equals(etag);
+        }
+        // Objects with a weak entity tag don't change their Last-Modified reliably with their content either,
+        // and a Last-Modified within the last second could still be followed by another change in that second
+        Instant lastModified = properties.getLastModified();
+        if (weak || lastModified == null || !lastModified.isBefore(now.minusSeconds(1))) {
+            return false;
+        }
+        try {
+            long since = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().getEpochSecond();
+            // HTTP dates have a resolution of one second
+            return lastModified.getEpochSecond() == since;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Delete several images in one request, reporting the outcome for each key
+     */
+    @PostMapping("/delete")
+    @ResponseBody
+    public ResponseEntity<List<S3DeleteResult>> deleteObjects(@RequestParam List<String> keys) {
+        if (keys.isEmpty() || keys.size() > MAX_BULK_DELETE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(storageService.deleteObjects(keys));
     }
 
     @PostMapping("/delete/{key}")
@@ -5,8 +5,16 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key", unique = true),
+    @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash"),
+    @Index(name = "idx_image_metadata_uploaded_at_id", columnList = "uploadedAt DESC, id DESC"),
+    @Index(name = "idx_image_metadata_pending_since", columnList = "processingLane, pendingSince")
+})
 @Data
 @NoArgsConstructor
 public class ImageMetadata {
@@ -17,8 +25,17 @@ public class ImageMetadata {
     private Long size;
     private String s3Key;
     private String s3Url;
+    private String contentHash; // hex SHA-256 of the original, shared by uploads of identical content
     private String thumbnailKey;
     private String thumbnailUrl;
+    private String processingLane; // "interactive" or "bulk", null for images uploaded before lanes
+    private LocalDateTime pendingSince; // set while the upload waits to be queued for processing under backpressure
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "image_rendition", joinColumns = @JoinColumn(name = "image_metadata_id"))
+    @OrderBy("format, width")
+    private List<ImageRendition> renditions = new ArrayList<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
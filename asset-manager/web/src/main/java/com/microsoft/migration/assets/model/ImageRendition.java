@@ -0,0 +1,41 @@
+package com.microsoft.migration.assets.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * One resized copy of an image, stored under the image's rendition prefix
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageRendition {
+    private String s3Key;
+    private String s3Url;
+    private String format; // file extension, e.g. "jpg" or "webp"
+    private int width;
+    private int height;
+    private long size;
+
+    /**
+     * Build srcset attribute values by format, e.g. {"webp": "/a/150x100.webp 150w, /a/300x200.webp 300w"}
+     */
+    public static Map<String, String> toSrcsets(List<ImageRendition> renditions, Function<String, String> urlForKey) {
+        Map<String, String> srcsets = new LinkedHashMap<>();
+        renditions.stream()
+                .sorted(Comparator.comparing(ImageRendition::getFormat).thenComparingInt(ImageRendition::getWidth))
+                .forEach(rendition -> srcsets.merge(rendition.getFormat(),
+                        urlForKey.apply(rendition.getS3Key()) + " " + rendition.getWidth() + "w",
+                        (first, second) -> first + ", " + second));
+        return srcsets;
+    }
+}
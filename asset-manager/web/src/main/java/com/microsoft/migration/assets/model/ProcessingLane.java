@@ -0,0 +1,41 @@
+package com.microsoft.migration.assets.model;
+
+import java.util.Locale;
+
+import static com.microsoft.migration.assets.config.RabbitConfig.BULK_IMAGE_PROCESSING_QUEUE;
+import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_PROCESSING_QUEUE;
+
+/**
+ * Processing lane of an upload, each with its own queue so that a bulk import never delays the thumbnail
+ * a user is waiting for on the gallery page
+ */
+public enum ProcessingLane {
+    INTERACTIVE("interactive", IMAGE_PROCESSING_QUEUE),
+    BULK("bulk", BULK_IMAGE_PROCESSING_QUEUE);
+
+    private final String name;
+    private final String queue;
+
+    ProcessingLane(String name, String queue) {
+        this.name = name;
+        this.queue = queue;
+    }
+
+    /**
+     * Name carried in {@link ImageProcessingMessage#getLane()} and used as metric tag
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    /**
+     * The lane requested by a client, e.g. through a request header; anything but "bulk" is interactive
+     */
+    public static ProcessingLane fromName(String name) {
+        return name != null && name.trim().toLowerCase(Locale.ROOT).equals(BULK.name) ? BULK : INTERACTIVE;
+    }
+}
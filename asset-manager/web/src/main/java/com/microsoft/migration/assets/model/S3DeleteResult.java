@@ -0,0 +1,33 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of deleting one object in a bulk delete
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3DeleteResult {
+    public static final String DELETED = "deleted";
+    public static final String NOT_FOUND = "not-found";
+    public static final String FAILED = "failed";
+
+    private String key;
+    private String status;
+    private String message;
+
+    public static S3DeleteResult deleted(String key) {
+        return new S3DeleteResult(key, DELETED, null);
+    }
+
+    public static S3DeleteResult notFound(String key) {
+        return new S3DeleteResult(key, NOT_FOUND, null);
+    }
+
+    public static S3DeleteResult failed(String key, String message) {
+        return new S3DeleteResult(key, FAILED, message);
+    }
+}
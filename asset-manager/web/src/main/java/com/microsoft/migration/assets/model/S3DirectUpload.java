@@ -0,0 +1,22 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A pre-authorized upload the browser sends straight to storage: PUT the file to the upload URL with the
+ * given headers before it expires, then report the key back to complete the upload
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3DirectUpload {
+    private String key;
+    private String uploadUrl;
+    private Instant expiresAt;
+    private Map<String, String> headers;
+}
@@ -0,0 +1,21 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Properties of a stored object needed to serve it over HTTP
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class S3ObjectProperties {
+    private String key;
+    private String contentType;
+    private long size;
+    private Instant lastModified;
+    private String eTag;
+}
@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
@@ -16,4 +18,11 @@ public class S3StorageItem {
     private Instant lastModified;
     private Instant uploadedAt;
     private String url;
+
+    // srcset values of the image's renditions by format, empty until the worker has generated them
+    private Map<String, String> srcsets = new LinkedHashMap<>();
+
+    public S3StorageItem(String key, String name, long size, Instant lastModified, Instant uploadedAt, String url) {
+        this(key, name, size, lastModified, uploadedAt, url, new LinkedHashMap<>());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.microsoft.migration.assets.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ThumbnailReadyEvent {
+    private String key;
+    private String thumbnailKey;
+    private String thumbnailUrl;
+    private String storageType;
+    private long completedAt; // epoch millis
+}
@@ -1,10 +1,97 @@
 package com.microsoft.migration.assets.repository;
 
 import com.microsoft.migration.assets.model.ImageMetadata;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface ImageMetadataRepository extends JpaRepository<ImageMetadata, String> {
-    // Basic CRUD operations are automatically provided by JpaRepository
-}
\ No newline at end of file
+    // Lookups by storage key are served by the unique index on s3Key
+
+    Optional<ImageMetadata> findByS3Key(String s3Key);
+
+    // Renditions are fetched in the same query, rather than with one extra select per image
+    @EntityGraph(attributePaths = "renditions")
+    List<ImageMetadata> findAllByS3KeyIn(Collection<String> s3Keys);
+
+    // An earlier upload of the same content whose thumbnail can be reused
+    Optional<ImageMetadata> findFirstByContentHashAndThumbnailKeyIsNotNull(String contentHash);
+
+    long countByThumbnailKey(String thumbnailKey);
+
+    // Uploads deferred under backpressure, oldest first, served by idx_image_metadata_pending_since
+    List<ImageMetadata> findByProcessingLaneAndPendingSinceIsNotNullOrderByPendingSinceAsc(String processingLane, Pageable limit);
+
+    long countByProcessingLaneAndPendingSinceIsNotNull(String processingLane);
+
+    // Takes a pending upload for queueing; 0 if another node has already taken it
+    @Modifying
+    @Query("update ImageMetadata m set m.pendingSince = null where m.id = :id and m.pendingSince is not null")
+    int clearPendingSince(@Param("id") String id);
+
+    // Returns a taken upload to pending when it could not be queued, keeping its place in the order
+    @Modifying
+    @Query("update ImageMetadata m set m.pendingSince = :pendingSince where m.id = :id and m.pendingSince is null")
+    int restorePendingSince(@Param("id") String id, @Param("pendingSince") LocalDateTime pendingSince);
+
+    /**
+     * Position of an image in the gallery order
+     */
+    interface GalleryKey {
+        String getS3Key();
+
+        LocalDateTime getUploadedAt();
+
+        String getId();
+    }
+
+    // Gallery pages, newest first, as index range scans on idx_image_metadata_uploaded_at_id. The first
+    // condition bounds the scan at the cursor, the second excludes the cursor itself and what precedes it.
+    @Query("select m.s3Key as s3Key, m.uploadedAt as uploadedAt, m.id as id from ImageMetadata m "
+            + "order by m.uploadedAt desc, m.id desc")
+    List<GalleryKey> findGalleryKeys(Pageable limit);
+
+    @Query("select m.s3Key as s3Key, m.uploadedAt as uploadedAt, m.id as id from ImageMetadata m "
+            + "where m.uploadedAt <= :uploadedAt and (m.uploadedAt < :uploadedAt or m.id < :id) "
+            + "order by m.uploadedAt desc, m.id desc")
+    List<GalleryKey> findGalleryKeysAfter(@Param("uploadedAt") LocalDateTime uploadedAt, @Param("id") String id, Pageable limit);
+
+    // Used by the storage reconciler to diff a page of the container listing against the table
+    @Query("select m.s3Key from ImageMetadata m where m.s3Key in :keys")
+    List<String> findS3KeysIn(@Param("keys") Collection<String> keys);
+
+    @Query("select m.thumbnailKey from ImageMetadata m where m.thumbnailKey in :keys")
+    List<String> findThumbnailKeysIn(@Param("keys") Collection<String> keys);
+
+    @Query("select m.s3Key from ImageMetadata m where m.s3Key > :after and m.s3Key <= :through order by m.s3Key")
+    List<String> findS3KeysInRange(@Param("after") String after, @Param("through") String through, Pageable limit);
+
+    @Query("select m.s3Key from ImageMetadata m where m.s3Key > :after order by m.s3Key")
+    List<String> findS3KeysAfter(@Param("after") String after, Pageable limit);
+
+    // Thumbnails that images other than the given ones still reference, as uploads of identical content share them
+    @Query("select distinct m.thumbnailKey from ImageMetadata m where m.thumbnailKey in :thumbnailKeys and m.s3Key not in :s3Keys")
+    List<String> findThumbnailKeysReferencedOutside(@Param("thumbnailKeys") Collection<String> thumbnailKeys,
+                                                    @Param("s3Keys") Collection<String> s3Keys);
+
+    // The rendition collection table has no entity of its own, so it is cleared with SQL. Hibernate's naming
+    // strategy puts no underscore after a digit, so the column of s3Key is s3key.
+    @Modifying
+    @Query(value = "DELETE FROM image_rendition WHERE image_metadata_id IN (SELECT id FROM image_metadata WHERE s3key IN (:s3Keys))",
+            nativeQuery = true)
+    int deleteRenditionsByS3KeyIn(@Param("s3Keys") Collection<String> s3Keys);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from ImageMetadata m where m.s3Key in :s3Keys")
+    int deleteAllByS3KeyIn(@Param("s3Keys") Collection<String> s3Keys);
+}
@@ -1,95 +1,399 @@
 package com.microsoft.migration.assets.service;
 
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.core.http.rest.Response;
 import com.azure.identity.DefaultAzureCredentialBuilder;
+import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchAsyncClient;
 import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.core.util.Context;
 import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.BlobProperties;
+import com.azure.storage.blob.models.BlobRange;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobInputStreamOptions;
 import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.azure.storage.common.Utility;
 import com.microsoft.migration.assets.model.ImageMetadata;
-import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.ImageRendition;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.S3DeleteResult;
+import com.microsoft.migration.assets.model.S3DirectUpload;
+import com.microsoft.migration.assets.model.S3ObjectProperties;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
 import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
-import com.azure.spring.messaging.servicebus.core.ServiceBusTemplate;
- import org.springframework.messaging.support.MessageBuilder;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_PROCESSING_QUEUE;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 @Profile("!dev") // Active when not in dev profile
-public class AwsS3Service implements StorageService {
+public class AwsS3Service implements StorageService, DirectUploadCapable {
+
+    private static final String BLOB_DELIMITER = "/";
+    // Keys generated for uploads: a random UUID, a dash and the original filename
+    private static final Pattern DIRECT_UPLOAD_KEY =
+            Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}-[^/]+");
+    private static final int UUID_PREFIX_LENGTH = 37;
+    private static final String LIST_SOURCE_DATABASE = "database";
+    private static final int BLOB_BATCH_SIZE = 256;
 
     private final BlobServiceClient blobServiceClient;
-    private final ServiceBusTemplate serviceBusTemplate;
+    private final ImageProcessingQueue imageProcessingQueue;
+    private final BackpressureMonitor backpressureMonitor;
     private final ImageMetadataRepository imageMetadataRepository;
+    private final ImageMetadataCache imageMetadataCache;
+    private final MeterRegistry meterRegistry;
+    private final DirectUploadSigner directUploadSigner;
+    private final BlobBatchAsyncClient blobBatchAsyncClient;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${azure.storage.blob.container-name}")
     private String containerName;
 
+    // "database" lists the gallery from the metadata table, "storage" from the container
+    @Value("${storage.list.source:database}")
+    private String listSource;
+
+    private volatile String containerUrl;
+
+    @Value("${storage.upload.max-file-size:512MB}")
+    private DataSize maxUploadSize;
+
+    // How long a direct upload URL can be used to start the upload
+    @Value("${azure.storage.upload.sas-expiry:15m}")
+    private Duration directUploadExpiry;
+
+    // Blob batches of a bulk delete sent at the same time
+    @Value("${azure.storage.delete.max-concurrency:4}")
+    private int deleteMaxConcurrency;
+
+    @Value("${azure.storage.upload.block-size:8MB}")
+    private DataSize uploadBlockSize;
+
+    @Value("${azure.storage.upload.max-concurrency:4}")
+    private int uploadMaxConcurrency;
+
+    // Content up to this size is sent in a single request, larger content in parallel blocks
+    @Value("${azure.storage.upload.max-single-upload-size:8MB}")
+    private DataSize uploadMaxSingleUploadSize;
+
     @Override
     public List<S3StorageItem> listObjects() {
-        return blobServiceClient.getBlobContainerClient(containerName).listBlobs().stream()
-                .map(blobItem -> {
-                    // Try to get metadata for upload time
-                    Instant uploadedAt = imageMetadataRepository.findAll().stream()
-                            .filter(metadata -> metadata.getS3Key().equals(blobItem.getName()))
-                            .map(metadata -> metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant())
-                            .findFirst()
-                            .orElse(blobItem.getProperties().getLastModified().toInstant()); // fallback to lastModified if metadata not found
-
-                    return new S3StorageItem(
-                            blobItem.getName(),
-                            extractFilename(blobItem.getName()),
-                            blobItem.getProperties().getContentLength(),
-                            blobItem.getProperties().getLastModified().toInstant(),
-                            uploadedAt,
-                            generateUrl(blobItem.getName())
-                    );
-                })
-                .collect(Collectors.toList());
+        // Listing by hierarchy keeps the renditions/ virtual directory out of the results
+        return toStorageItems(blobServiceClient.getBlobContainerClient(containerName)
+                .listBlobsByHierarchy(BLOB_DELIMITER).stream()
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public S3StoragePage listObjects(String cursor, int pageSize) {
+        if (LIST_SOURCE_DATABASE.equals(listSource)) {
+            return listFromDatabase(cursor, pageSize);
+        }
+
+        // Fetch a single service page; the continuation token is handed back to the caller as the next cursor
+        ListBlobsOptions options = new ListBlobsOptions().setMaxResultsPerPage(pageSize);
+        PagedIterable<BlobItem> blobs = blobServiceClient.getBlobContainerClient(containerName)
+                .listBlobsByHierarchy(BLOB_DELIMITER, options, null);
+        PagedResponse<BlobItem> page = (cursor == null ? blobs.streamByPage() : blobs.streamByPage(cursor))
+                .findFirst()
+                .orElse(null);
+        if (page == null) {
+            return new S3StoragePage(new ArrayList<>(), null);
+        }
+
+        String nextCursor = page.getContinuationToken();
+        return new S3StoragePage(toStorageItems(page.getValue()),
+                nextCursor == null || nextCursor.isEmpty() ? null : nextCursor);
+    }
+
+    /**
+     * A gallery page from the metadata table, newest first. The cursor is the upload time and id of the last
+     * image on the previous page, so each page is an index range scan whatever its position.
+     */
+    private S3StoragePage listFromDatabase(String cursor, int pageSize) {
+        Pageable limit = PageRequest.of(0, pageSize + 1);
+        GalleryCursor position = GalleryCursor.decode(cursor);
+        List<ImageMetadataRepository.GalleryKey> keys = position == null
+                ? imageMetadataRepository.findGalleryKeys(limit)
+                : imageMetadataRepository.findGalleryKeysAfter(position.uploadedAt(), position.id(), limit);
+        boolean hasNext = keys.size() > pageSize;
+        if (hasNext) {
+            keys = keys.subList(0, pageSize);
+        }
+
+        Map<String, ImageMetadata> metadataByKey = imageMetadataCache.findAllByS3Keys(
+                keys.stream().map(ImageMetadataRepository.GalleryKey::getS3Key).collect(Collectors.toList()));
+        List<S3StorageItem> items = new ArrayList<>();
+        for (ImageMetadataRepository.GalleryKey key : keys) {
+            ImageMetadata metadata = metadataByKey.get(key.getS3Key());
+            if (metadata == null) {
+                continue; // deleted since the page query
+            }
+            Instant lastModified = (metadata.getLastModified() != null ? metadata.getLastModified() : metadata.getUploadedAt())
+                    .atZone(java.time.ZoneId.systemDefault()).toInstant();
+            items.add(toStorageItem(key.getS3Key(), metadata.getSize() != null ? metadata.getSize() : 0, lastModified, metadata));
+        }
+
+        String nextCursor = null;
+        if (hasNext) {
+            ImageMetadataRepository.GalleryKey last = keys.get(keys.size() - 1);
+            nextCursor = new GalleryCursor(last.getUploadedAt(), last.getId()).encode();
+        }
+        return new S3StoragePage(items, nextCursor);
+    }
+
+    /**
+     * Record an object found in storage without metadata, as if it had just been uploaded. Nobody is waiting
+     * on its thumbnail, so it is processed in the bulk lane.
+     */
+    public void recordExistingObject(String key, String contentType, long size) {
+        recordUpload(key, extractFilename(key), contentType, size, null, ProcessingLane.BULK);
     }
 
     @Override
-    public void uploadObject(MultipartFile file) throws IOException {
-        String key = generateKey(file.getOriginalFilename());
+    public void uploadObject(String filename, String contentType, InputStream content, ProcessingLane lane) throws IOException {
+        String key = generateKey(filename);
 
+        // Hash and count the content while it is being uploaded, without a separate read of the file
         var blobClient = blobServiceClient.getBlobContainerClient(containerName).getBlobClient(key);
-        BlobHttpHeaders headers = new BlobHttpHeaders().setContentType(file.getContentType());
-        BlobParallelUploadOptions options = new BlobParallelUploadOptions(file.getInputStream()).setHeaders(headers);
+        BlobHttpHeaders headers = new BlobHttpHeaders().setContentType(contentType);
+        HashingInputStream input = new HashingInputStream(content);
+        BlobParallelUploadOptions options = new BlobParallelUploadOptions(input)
+                .setHeaders(headers)
+                .setParallelTransferOptions(parallelTransferOptions());
         blobClient.uploadWithResponse(options, null, null);
+        recordUpload(key, filename, contentType, input.getCount(), input.getHash(), lane);
+    }
+
+    @Override
+    public S3DirectUpload initiateDirectUpload(String filename, String contentType) {
+        String key = generateKey(filename);
+        BlobClient blobClient = blobServiceClient.getBlobContainerClient(containerName).getBlobClient(key);
+        OffsetDateTime expiresAt = OffsetDateTime.now().plus(directUploadExpiry);
+        String sas = directUploadSigner.signUpload(blobClient, expiresAt);
 
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            key,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
+        // Headers of a single Put Blob request; the content type is stored with the blob
+        Map<String, String> headers = Map.of(
+                "x-ms-blob-type", "BlockBlob",
+                "Content-Type", contentType
         );
-        serviceBusTemplate.send(IMAGE_PROCESSING_QUEUE, MessageBuilder.withPayload(message).build());
+        return new S3DirectUpload(key, blobClient.getBlobUrl() + "?" + sas, expiresAt.toInstant(), headers);
+    }
 
-        // Create and save metadata to database
+    @Override
+    public void completeDirectUpload(String key, ProcessingLane lane) throws IOException {
+        // Only keys handed out by initiateDirectUpload, and not the thumbnails generated from them
+        if (!DIRECT_UPLOAD_KEY.matcher(key).matches() || imageMetadataRepository.countByThumbnailKey(key) > 0) {
+            throw new IllegalArgumentException("Not an upload key: " + key);
+        }
+        // Completion may be retried by the browser
+        if (imageMetadataRepository.findByS3Key(key).isPresent()) {
+            return;
+        }
+
+        BlobClient blobClient = blobServiceClient.getBlobContainerClient(containerName).getBlobClient(key);
+        BlobProperties properties;
+        try {
+            properties = blobClient.getProperties();
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                throw new FileNotFoundException("File not found: " + key);
+            }
+            throw new IOException("Failed to read properties of " + key, e);
+        }
+        if (properties.getBlobSize() > maxUploadSize.toBytes()) {
+            blobClient.delete();
+            throw new IOException("File exceeds the maximum upload size of " + maxUploadSize.toMegabytes() + "MB");
+        }
+
+        // The bytes never passed through this node, so there is no content hash to deduplicate with
+        recordUpload(key, key.substring(UUID_PREFIX_LENGTH), properties.getContentType(), properties.getBlobSize(), null, lane);
+    }
+
+    private void recordUpload(String key, String filename, String contentType, long size, String contentHash,
+                              ProcessingLane lane) {
+        // Create metadata for the database
         ImageMetadata metadata = new ImageMetadata();
         metadata.setId(UUID.randomUUID().toString());
-        metadata.setFilename(file.getOriginalFilename());
-        metadata.setContentType(file.getContentType());
-        metadata.setSize(file.getSize());
+        metadata.setFilename(filename);
+        metadata.setContentType(contentType);
+        metadata.setSize(size);
         metadata.setS3Key(key);
         metadata.setS3Url(generateUrl(key));
+        metadata.setContentHash(contentHash);
+
+        // Identical content that already has a thumbnail: reference its thumbnail and renditions instead of
+        // queueing the image for processing again. The original itself is still stored under its own key,
+        // as the gallery lists stored objects.
+        if (contentHash != null) {
+            Optional<ImageMetadata> existing = imageMetadataRepository.findFirstByContentHashAndThumbnailKeyIsNotNull(contentHash);
+            if (existing.isPresent()) {
+                reuseDerivedImages(metadata, existing.get());
+                imageMetadataRepository.save(metadata);
+                // A listing may have cached the key as having no metadata while it was being uploaded
+                imageMetadataCache.invalidate(key);
+                recordDeduplication(true, metadata);
+                return;
+            }
+            recordDeduplication(false, metadata);
+        }
 
+        // Send message to queue for thumbnail generation, or leave it to the PendingUploadDispatcher
+        // while the lane's backlog is too large
+        ProcessingLane processingLane = imageProcessingQueue.laneFor(lane, size);
+        metadata.setProcessingLane(processingLane.getName());
+        if (backpressureMonitor.isUnderPressure(processingLane)) {
+            metadata.setPendingSince(LocalDateTime.now());
+            backpressureMonitor.recordDeferred(processingLane);
+        } else {
+            imageProcessingQueue.send(key, contentType, getStorageType(), size, processingLane);
+        }
+
+        // Save metadata to database
         imageMetadataRepository.save(metadata);
+        imageMetadataCache.invalidate(key);
+    }
+
+    private void reuseDerivedImages(ImageMetadata metadata, ImageMetadata existing) {
+        metadata.setThumbnailKey(existing.getThumbnailKey());
+        metadata.setThumbnailUrl(existing.getThumbnailUrl());
+        existing.getRenditions().forEach(rendition -> metadata.getRenditions().add(new ImageRendition(
+                rendition.getS3Key(), rendition.getS3Url(), rendition.getFormat(),
+                rendition.getWidth(), rendition.getHeight(), rendition.getSize())));
+    }
+
+    private void recordDeduplication(boolean hit, ImageMetadata metadata) {
+        meterRegistry.counter("assets.upload.dedup", "result", hit ? "hit" : "miss").increment();
+        if (hit) {
+            // What the worker would have downloaded and stored; its CPU time is one skipped job per hit
+            long renditionBytes = metadata.getRenditions().stream().mapToLong(ImageRendition::getSize).sum();
+            meterRegistry.counter("assets.upload.dedup.saved.bytes", "kind", "download").increment(metadata.getSize());
+            meterRegistry.counter("assets.upload.dedup.saved.bytes", "kind", "renditions").increment(renditionBytes);
+            meterRegistry.counter("assets.upload.dedup.saved.jobs").increment();
+        }
+    }
+
+    /**
+     * Blocks of up to blockSize are staged concurrently once the content exceeds the single upload threshold.
+     * The SDK buffers up to maxConcurrency blocks per upload while reading the stream.
+     */
+    private ParallelTransferOptions parallelTransferOptions() {
+        return new ParallelTransferOptions()
+                .setBlockSizeLong(uploadBlockSize.toBytes())
+                .setMaxConcurrency(uploadMaxConcurrency)
+                .setMaxSingleUploadSizeLong(uploadMaxSingleUploadSize.toBytes());
+    }
+
+    /**
+     * Computes the SHA-256 and length of the content as the upload reads it
+     */
+    private static final class HashingInputStream extends DigestInputStream {
+        private long count;
+
+        HashingInputStream(InputStream content) {
+            super(content, newContentDigest());
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            // A reset would feed the same bytes to the digest twice
+            return false;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        String getHash() {
+            return HexFormat.of().formatHex(getMessageDigest().digest());
+        }
+
+        private static MessageDigest newContentDigest() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every Java platform is required to support SHA-256
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @Override
+    public Optional<S3StorageItem> getObjectInfo(String key) throws IOException {
+        // The blob's properties and one indexed metadata lookup, however many objects the container holds
+        S3ObjectProperties properties;
+        try {
+            properties = getObjectProperties(key);
+        } catch (FileNotFoundException e) {
+            return Optional.empty();
+        }
+        return Optional.of(toStorageItem(key, properties.getSize(), properties.getLastModified(),
+                imageMetadataCache.findByS3Key(key).orElse(null)));
     }
 
     @Override
@@ -100,26 +404,189 @@ public class AwsS3Service implements StorageService {
     }
 
     @Override
-    public void deleteObject(String key) throws IOException {
-        // Delete both original and thumbnail if it exists
-        blobServiceClient.getBlobContainerClient(containerName)
+    public S3ObjectProperties getObjectProperties(String key) throws IOException {
+        try {
+            BlobProperties properties = blobServiceClient.getBlobContainerClient(containerName)
+                    .getBlobClient(key)
+                    .getProperties();
+            return new S3ObjectProperties(
+                    key,
+                    properties.getContentType(),
+                    properties.getBlobSize(),
+                    properties.getLastModified().toInstant(),
+                    properties.getETag()
+            );
+        } catch (BlobStorageException e) {
+            if (e.getStatusCode() == 404) {
+                throw new FileNotFoundException("File not found: " + key);
+            }
+            throw new IOException("Failed to read properties of " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream getObject(String key, long offset, long length) throws IOException {
+        return blobServiceClient.getBlobContainerClient(containerName)
                 .getBlobClient(key)
-                .delete();
+                .openInputStream(new BlobInputStreamOptions().setRange(new BlobRange(offset, length)));
+    }
 
+    @Override
+    public void transferTo(String key, long offset, long length, OutputStream output) throws IOException {
+        // Download the range straight into the response instead of through a buffered blob input stream
         try {
-            // Try to delete thumbnail if it exists
             blobServiceClient.getBlobContainerClient(containerName)
-                    .getBlobClient(getThumbnailKey(key))
-                    .delete();
-        } catch (Exception e) {
-            // Ignore if thumbnail doesn't exist
+                    .getBlobClient(key)
+                    .downloadStreamWithResponse(output, new BlobRange(offset, length), null, null, false, null, Context.NONE);
+        } catch (BlobStorageException e) {
+            throw new IOException("Failed to download " + key, e);
+        }
+    }
+
+    @Override
+    public void deleteObject(String key) throws IOException {
+        var containerClient = blobServiceClient.getBlobContainerClient(containerName);
+        Optional<ImageMetadata> metadata = imageMetadataCache.findByS3Key(key);
+
+        // Delete the original
+        containerClient.getBlobClient(key).delete();
+
+        // Thumbnail and renditions can be shared with uploads of identical content; they are deleted with the
+        // last image referencing them
+        String thumbnailKey = metadata.map(ImageMetadata::getThumbnailKey).orElse(null);
+        if (thumbnailKey == null || imageMetadataRepository.countByThumbnailKey(thumbnailKey) <= 1) {
+            try {
+                // Try to delete thumbnail if it exists
+                containerClient.getBlobClient(thumbnailKey != null ? thumbnailKey : getThumbnailKey(key)).delete();
+            } catch (Exception e) {
+                // Ignore if thumbnail doesn't exist
+            }
+
+            // Delete the recorded renditions, which may live under the prefix of the image they were made for,
+            // and anything else stored under this key's prefix
+            metadata.ifPresent(found -> found.getRenditions().forEach(rendition -> {
+                try {
+                    containerClient.getBlobClient(rendition.getS3Key()).delete();
+                } catch (Exception e) {
+                    // Ignore if rendition doesn't exist
+                }
+            }));
+            containerClient.listBlobs(new ListBlobsOptions().setPrefix(getRenditionPrefix(key)), null)
+                    .forEach(rendition -> containerClient.getBlobClient(rendition.getName()).delete());
         }
 
         // Delete metadata from database
-        imageMetadataRepository.findAll().stream()
-                .filter(metadata -> metadata.getS3Key().equals(key))
-                .findFirst()
-                .ifPresent(metadata -> imageMetadataRepository.delete(metadata));
+        metadata.ifPresent(imageMetadataRepository::delete);
+        imageMetadataCache.invalidate(key);
+    }
+
+    @Override
+    public List<S3DeleteResult> deleteObjects(List<String> keys) {
+        List<String> distinctKeys = keys.stream().distinct().collect(Collectors.toList());
+        Map<String, ImageMetadata> metadataByKey = new HashMap<>();
+        imageMetadataRepository.findAllByS3KeyIn(distinctKeys)
+                .forEach(metadata -> metadataByKey.put(metadata.getS3Key(), metadata));
+
+        // Originals first; derived images and metadata are only removed for originals that are gone
+        Map<String, Integer> statuses = deleteBlobs(distinctKeys);
+        List<String> deleted = distinctKeys.stream()
+                .filter(key -> isGone(statuses.get(key)))
+                .collect(Collectors.toList());
+        if (deleted.isEmpty()) {
+            return toDeleteResults(keys, statuses);
+        }
+
+        // Thumbnail and renditions go with the last image referencing them, as in deleteObject
+        List<String> thumbnailKeys = deleted.stream()
+                .map(metadataByKey::get)
+                .filter(metadata -> metadata != null && metadata.getThumbnailKey() != null)
+                .map(ImageMetadata::getThumbnailKey)
+                .distinct()
+                .collect(Collectors.toList());
+        Set<String> shared = thumbnailKeys.isEmpty() ? Set.of()
+                : new HashSet<>(imageMetadataRepository.findThumbnailKeysReferencedOutside(thumbnailKeys, deleted));
+        var containerClient = blobServiceClient.getBlobContainerClient(containerName);
+        Set<String> derived = new LinkedHashSet<>();
+        for (String key : deleted) {
+            ImageMetadata metadata = metadataByKey.get(key);
+            if (metadata == null || metadata.getThumbnailKey() == null) {
+                derived.add(getThumbnailKey(key));
+            } else if (!shared.contains(metadata.getThumbnailKey())) {
+                derived.add(metadata.getThumbnailKey());
+                metadata.getRenditions().forEach(rendition -> derived.add(rendition.getS3Key()));
+            } else {
+                continue;
+            }
+            // Anything else stored under this key's prefix, also for keys without metadata
+            containerClient.listBlobs(new ListBlobsOptions().setPrefix(getRenditionPrefix(key)), null)
+                    .forEach(rendition -> derived.add(rendition.getName()));
+        }
+        deleteBlobs(new ArrayList<>(derived)).forEach((key, status) -> {
+            if (!isGone(status)) {
+                log.warn("Failed to delete derived image {}, status {}", key, status);
+            }
+        });
+
+        transactionTemplate.executeWithoutResult(transaction -> {
+            imageMetadataRepository.deleteRenditionsByS3KeyIn(deleted);
+            imageMetadataRepository.deleteAllByS3KeyIn(deleted);
+        });
+        deleted.forEach(imageMetadataCache::invalidate);
+        return toDeleteResults(keys, statuses);
+    }
+
+    /**
+     * Delete blobs in batches of up to 256 sub-requests, the most a blob batch may hold, with up to
+     * deleteMaxConcurrency batches in flight. Returns the status of each delete, or none for blobs whose
+     * batch could not be sent.
+     */
+    private Map<String, Integer> deleteBlobs(List<String> names) {
+        Map<String, Integer> statuses = new ConcurrentHashMap<>();
+        List<List<String>> batches = new ArrayList<>();
+        for (int from = 0; from < names.size(); from += BLOB_BATCH_SIZE) {
+            batches.add(names.subList(from, Math.min(from + BLOB_BATCH_SIZE, names.size())));
+        }
+        Flux.fromIterable(batches)
+                .flatMap(batch -> submitDeleteBatch(batch, statuses), Math.max(deleteMaxConcurrency, 1))
+                .then()
+                .block();
+        return statuses;
+    }
+
+    private Mono<Void> submitDeleteBatch(List<String> names, Map<String, Integer> statuses) {
+        BlobBatch batch = blobBatchAsyncClient.getBlobBatch();
+        Map<String, Response<Void>> responses = new LinkedHashMap<>();
+        names.forEach(name -> responses.put(name, batch.deleteBlob(containerName, name)));
+        // Failed sub-requests are reported through their own responses rather than thrown
+        return blobBatchAsyncClient.submitBatchWithResponse(batch, false)
+                .doOnSuccess(ignored -> responses.forEach((name, response) -> statuses.put(name, response.getStatusCode())))
+                .onErrorResume(e -> {
+                    log.error("Failed to send a batch deleting {} blobs", names.size(), e);
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private static boolean isGone(Integer status) {
+        return status != null && (status == 202 || status == 404);
+    }
+
+    private static List<S3DeleteResult> toDeleteResults(List<String> keys, Map<String, Integer> statuses) {
+        return keys.stream()
+                .map(key -> {
+                    Integer status = statuses.get(key);
+                    if (status == null) {
+                        return S3DeleteResult.failed(key, "Delete request could not be sent");
+                    }
+                    if (status == 202) {
+                        return S3DeleteResult.deleted(key);
+                    }
+                    if (status == 404) {
+                        return S3DeleteResult.notFound(key);
+                    }
+                    return S3DeleteResult.failed(key, "Delete failed with status " + status);
+                })
+                .collect(Collectors.toList());
     }
 
     @Override
@@ -127,6 +594,43 @@ public class AwsS3Service implements StorageService {
         return "azure";
     }
 
+    private List<S3StorageItem> toStorageItems(List<BlobItem> blobItems) {
+        // Virtual directories returned by hierarchical listings (such as renditions/) are not objects
+        blobItems = blobItems.stream()
+                .filter(blobItem -> !Boolean.TRUE.equals(blobItem.isPrefix()))
+                .collect(Collectors.toList());
+        Map<String, ImageMetadata> metadataByKey = imageMetadataCache.findAllByS3Keys(
+                blobItems.stream().map(BlobItem::getName).collect(Collectors.toList()));
+
+        return blobItems.stream()
+                .map(blobItem -> toStorageItem(
+                        blobItem.getName(),
+                        blobItem.getProperties().getContentLength(),
+                        blobItem.getProperties().getLastModified().toInstant(),
+                        metadataByKey.get(blobItem.getName())))
+                .collect(Collectors.toList());
+    }
+
+    private S3StorageItem toStorageItem(String key, long size, Instant lastModified, ImageMetadata metadata) {
+        // Try to get metadata for upload time
+        Instant uploadedAt = metadata != null
+                ? metadata.getUploadedAt().atZone(java.time.ZoneId.systemDefault()).toInstant()
+                : lastModified; // fallback to lastModified if metadata not found
+
+        S3StorageItem item = new S3StorageItem(
+                key,
+                extractFilename(key),
+                size,
+                lastModified,
+                uploadedAt,
+                generateUrl(key)
+        );
+        if (metadata != null) {
+            item.setSrcsets(ImageRendition.toSrcsets(metadata.getRenditions(), this::generateUrl));
+        }
+        return item;
+    }
+
     private String extractFilename(String key) {
         // Extract filename from the object key
         int lastSlashIndex = key.lastIndexOf('/');
@@ -134,9 +638,11 @@ public class AwsS3Service implements StorageService {
     }
 
     private String generateUrl(String key) {
-        return blobServiceClient.getBlobContainerClient(containerName)
-                .getBlobClient(key)
-                .getBlobUrl();
+        // The URL a blob client for the key would report, without creating a client for every listed item
+        if (containerUrl == null) {
+            containerUrl = blobServiceClient.getBlobContainerClient(containerName).getBlobContainerUrl();
+        }
+        return containerUrl + "/" + Utility.urlEncode(Utility.urlDecode(key));
     }
 
     private String generateKey(String filename) {
@@ -0,0 +1,164 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClient;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the backlog of each processing lane, so uploads can be deferred instead of growing it without limit.
+ *
+ * The depth of each lane's queue is sampled from its Service Bus runtime properties. The rate at which the
+ * workers drain it is estimated from the change in depth between samples and the messages this node sent
+ * in between; messages sent by other nodes are not known here, which makes the estimate err on the low side.
+ * A lane comes under pressure once its depth reaches maxDepth, or once it is above resumeDepth and would
+ * take longer than maxDrainTime to drain at the estimated rate, or isn't seen draining at all. It stays under
+ * pressure until its depth is back below resumeDepth.
+ *
+ * Published as {@code assets.processing.backpressure} (1 while deferring), {@code assets.processing.queue.depth}
+ * and {@code assets.processing.drain.rate} in messages per second, tagged with the lane. Deferred uploads are
+ * counted in {@code assets.processing.deferred}.
+ */
+@Slf4j
+@Component
+public class BackpressureMonitor {
+
+    private final ServiceBusAdministrationClient adminClient;
+    private final boolean enabled;
+    private final long maxDepth;
+    private final long resumeDepth;
+    private final Duration maxDrainTime;
+    private final Map<ProcessingLane, LaneState> lanes = new EnumMap<>(ProcessingLane.class);
+
+    public BackpressureMonitor(ServiceBusAdministrationClient adminClient,
+                               MeterRegistry registry,
+                               @Value("${storage.processing.backpressure.enabled:true}") boolean enabled,
+                               @Value("${storage.processing.backpressure.max-depth:5000}") long maxDepth,
+                               @Value("${storage.processing.backpressure.resume-depth:1000}") long resumeDepth,
+                               @Value("${storage.processing.backpressure.max-drain-time:10m}") Duration maxDrainTime) {
+        this.adminClient = adminClient;
+        this.enabled = enabled;
+        this.maxDepth = maxDepth;
+        this.resumeDepth = Math.min(resumeDepth, maxDepth);
+        this.maxDrainTime = maxDrainTime;
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            LaneState state = new LaneState(Counter.builder("assets.processing.deferred")
+                    .description("Uploads recorded as pending instead of queued, as their lane was under pressure")
+                    .tag("lane", lane.getName())
+                    .register(registry));
+            Gauge.builder("assets.processing.backpressure", state, s -> s.underPressure ? 1 : 0)
+                    .description("Whether uploads of the lane are deferred because its backlog is too large")
+                    .tag("lane", lane.getName())
+                    .register(registry);
+            Gauge.builder("assets.processing.queue.depth", state, s -> s.depth)
+                    .description("Active messages in the lane's queue at the last sample")
+                    .tag("lane", lane.getName())
+                    .register(registry);
+            Gauge.builder("assets.processing.drain.rate", state, s -> s.drainRate)
+                    .description("Estimated rate at which the workers consume the lane's queue, in messages per second")
+                    .tag("lane", lane.getName())
+                    .register(registry);
+            lanes.put(lane, state);
+        }
+    }
+
+    /**
+     * Whether uploads of the lane should be recorded as pending rather than queued
+     */
+    public boolean isUnderPressure(ProcessingLane lane) {
+        return lanes.get(lane).underPressure;
+    }
+
+    public double getDrainRate(ProcessingLane lane) {
+        return lanes.get(lane).drainRate;
+    }
+
+    /**
+     * Count a message sent to the lane's queue, for the drain rate estimate
+     */
+    public void recordSent(ProcessingLane lane) {
+        lanes.get(lane).sent.incrementAndGet();
+    }
+
+    public void recordDeferred(ProcessingLane lane) {
+        lanes.get(lane).deferred.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${storage.processing.backpressure.sample-interval-ms:10000}")
+    public void sample() {
+        if (!enabled) {
+            return;
+        }
+        for (ProcessingLane lane : lanes.keySet()) {
+            try {
+                long depth = adminClient.getQueueRuntimeProperties(lane.getQueue()).getActiveMessageCount();
+                update(lane, depth, System.nanoTime());
+            } catch (RuntimeException e) {
+                // Keep the last known state until the queue can be sampled again
+                log.warn("Could not sample the depth of queue {}", lane.getQueue(), e);
+            }
+        }
+    }
+
+    /**
+     * Take a depth sample of the lane's queue, taken at the given {@link System#nanoTime()}
+     */
+    void update(ProcessingLane lane, long depth, long now) {
+        LaneState state = lanes.get(lane);
+        long sent = state.sent.get();
+        if (state.sampled) {
+            double seconds = (now - state.sampledAt) / 1e9;
+            long drained = Math.max(state.depth + (sent - state.sentAtSample) - depth, 0);
+            // An idle queue tells nothing about the rate, keep the previous estimate
+            if (seconds > 0 && (state.depth > 0 || drained > 0)) {
+                double rate = drained / seconds;
+                state.drainRate = state.drainRate == 0 ? rate : (state.drainRate + rate) / 2;
+            }
+        }
+        state.depth = depth;
+        state.sentAtSample = sent;
+        state.sampledAt = now;
+        state.sampled = true;
+
+        boolean underPressure;
+        if (state.underPressure) {
+            underPressure = depth >= resumeDepth;
+        } else {
+            underPressure = depth >= maxDepth || (depth >= resumeDepth && drainTimeExceeded(depth, state.drainRate));
+        }
+        if (underPressure != state.underPressure) {
+            log.warn("Processing lane {} {} deferring uploads: {} messages queued, draining at {} per second",
+                    lane.getName(), underPressure ? "started" : "stopped", depth, String.format("%.1f", state.drainRate));
+        }
+        state.underPressure = underPressure;
+    }
+
+    private boolean drainTimeExceeded(long depth, double drainRate) {
+        return drainRate <= 0 || depth / drainRate > maxDrainTime.toSeconds();
+    }
+
+    private static final class LaneState {
+        private final AtomicLong sent = new AtomicLong();
+        private final Counter deferred;
+        private volatile boolean underPressure;
+        private volatile long depth;
+        private volatile double drainRate;
+        private long sentAtSample;
+        private long sampledAt;
+        private boolean sampled;
+
+        LaneState(Counter deferred) {
+            this.deferred = deferred;
+        }
+    }
+}
@@ -32,8 +32,8 @@ public class BackupMessageProcessor {
 
         try {
             log.info("[BACKUP] Monitoring message: {}", message.getKey());
-            log.info("[BACKUP] Content type: {}, Storage: {}, Size: {}", 
-                    message.getContentType(), message.getStorageType(), message.getSize());
+            log.info("[BACKUP] Content type: {}, Storage: {}, Size: {}, Lane: {}", 
+                    message.getContentType(), message.getStorageType(), message.getSize(), message.getLane());
             
             // Acknowledge the message
             context.complete();
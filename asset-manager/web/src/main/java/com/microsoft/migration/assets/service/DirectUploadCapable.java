@@ -0,0 +1,30 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.S3DirectUpload;
+
+import java.io.IOException;
+
+/**
+ * Storage the browser can upload to directly, without the file passing through the web module
+ */
+public interface DirectUploadCapable {
+
+    /**
+     * Reserve a key for a new upload and authorize the browser to store the file under it
+     */
+    S3DirectUpload initiateDirectUpload(String filename, String contentType);
+
+    /**
+     * Record a file the browser has stored under a key from {@link #initiateDirectUpload} and queue it for processing
+     */
+    default void completeDirectUpload(String key) throws IOException {
+        completeDirectUpload(key, ProcessingLane.INTERACTIVE);
+    }
+
+    /**
+     * Record a file stored through a direct upload and queue it for processing in the requested lane,
+     * or the bulk lane if it is large
+     */
+    void completeDirectUpload(String key, ProcessingLane lane) throws IOException;
+}
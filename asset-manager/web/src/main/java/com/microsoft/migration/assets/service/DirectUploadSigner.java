@@ -0,0 +1,71 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.UserDelegationKey;
+import com.azure.storage.blob.sas.BlobSasPermission;
+import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Signs SAS tokens that allow creating a single blob.
+ *
+ * With Entra ID credentials the token is a user delegation SAS. The delegation key costs a round trip to
+ * fetch, so it is reused until it would expire before the token it signs. With a connection string, as
+ * used against Azurite, the token is a service SAS signed with the account key instead.
+ */
+@Component
+@Profile("!dev")
+public class DirectUploadSigner {
+
+    private static final Duration DELEGATION_KEY_LIFETIME = Duration.ofHours(1);
+    // Tolerates clock skew between this node and the storage service
+    private static final Duration CLOCK_SKEW = Duration.ofMinutes(5);
+
+    private final BlobServiceClient blobServiceClient;
+    private final boolean sharedKey;
+    private final ReentrantLock lock = new ReentrantLock();
+    private UserDelegationKey delegationKey;
+
+    public DirectUploadSigner(BlobServiceClient blobServiceClient,
+                              @Value("${azure.storage.connection-string:}") String connectionString) {
+        this.blobServiceClient = blobServiceClient;
+        this.sharedKey = StringUtils.hasText(connectionString);
+    }
+
+    /**
+     * SAS query string allowing the blob to be created or overwritten until the given time
+     */
+    public String signUpload(BlobClient blobClient, OffsetDateTime expiresAt) {
+        BlobSasPermission permission = new BlobSasPermission()
+                .setCreatePermission(true)
+                .setWritePermission(true);
+        BlobServiceSasSignatureValues values = new BlobServiceSasSignatureValues(expiresAt, permission)
+                .setStartTime(OffsetDateTime.now().minus(CLOCK_SKEW));
+        if (sharedKey) {
+            return blobClient.generateSas(values);
+        }
+        return blobClient.generateUserDelegationSas(values, delegationKey(expiresAt));
+    }
+
+    private UserDelegationKey delegationKey(OffsetDateTime validUntil) {
+        lock.lock();
+        try {
+            if (delegationKey == null || delegationKey.getSignedExpiry().isBefore(validUntil)) {
+                OffsetDateTime now = OffsetDateTime.now();
+                delegationKey = blobServiceClient.getUserDelegationKey(
+                        now.minus(CLOCK_SKEW), now.plus(DELEGATION_KEY_LIFETIME));
+            }
+            return delegationKey;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
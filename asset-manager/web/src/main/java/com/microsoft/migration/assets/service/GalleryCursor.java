@@ -0,0 +1,41 @@
+package com.microsoft.migration.assets.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position in the gallery listing from the metadata table: the upload time and id of the last image on the
+ * previous page. Encoded as unpadded URL-safe Base64, so it passes through a query parameter unchanged.
+ */
+record GalleryCursor(LocalDateTime uploadedAt, String id) {
+
+    private static final String SEPARATOR = "|";
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((uploadedAt + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * The position of an encoded cursor, or null for the first page
+     */
+    static GalleryCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf(SEPARATOR);
+            if (separator > 0) {
+                return new GalleryCursor(LocalDateTime.parse(position.substring(0, separator)),
+                        position.substring(separator + 1));
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // fall through to the first page
+        }
+        // A cursor from the storage listing mode, or a mangled one
+        return null;
+    }
+}
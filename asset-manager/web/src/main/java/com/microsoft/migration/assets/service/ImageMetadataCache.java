@@ -0,0 +1,90 @@
+package com.microsoft.migration.assets.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microsoft.migration.assets.model.ImageMetadata;
+import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Bounded in-process cache of image metadata by storage key, in front of {@link ImageMetadataRepository}.
+ *
+ * Rows only change on upload, thumbnail completion and delete. The upload and delete paths invalidate their
+ * key, and thumbnail ready events from the worker invalidate the key of the processed image. Keys without
+ * metadata, such as thumbnails in the gallery listing, are cached as absent too. The TTL bounds staleness
+ * from changes this node is not told about, like events delivered to another web node.
+ *
+ * Metrics are published as the cache.* meters with cache=image-metadata.
+ */
+@Slf4j
+@Component
+public class ImageMetadataCache {
+
+    private static final int LOOKUP_BATCH_SIZE = 1000;
+
+    private final ImageMetadataRepository imageMetadataRepository;
+    private final Cache<String, Optional<ImageMetadata>> cache;
+
+    public ImageMetadataCache(ImageMetadataRepository imageMetadataRepository,
+                              ThumbnailEventBus thumbnailEventBus,
+                              MeterRegistry registry,
+                              @Value("${storage.metadata-cache.max-size:10000}") long maxSize,
+                              @Value("${storage.metadata-cache.ttl:10m}") Duration ttl) {
+        this.imageMetadataRepository = imageMetadataRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "image-metadata");
+
+        // The worker has committed the thumbnail and renditions before it sends the event
+        thumbnailEventBus.subscribe(event -> invalidate(event.getKey()));
+    }
+
+    public Optional<ImageMetadata> findByS3Key(String key) {
+        return cache.get(key, imageMetadataRepository::findByS3Key);
+    }
+
+    /**
+     * Metadata of the given keys that have any, loading all missing keys in batched queries
+     */
+    public Map<String, ImageMetadata> findAllByS3Keys(Collection<String> keys) {
+        Map<String, ImageMetadata> metadataByKey = new HashMap<>();
+        cache.getAll(keys, this::loadAll).forEach((key, metadata) ->
+                metadata.ifPresent(found -> metadataByKey.put(key, found)));
+        return metadataByKey;
+    }
+
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    private Map<String, Optional<ImageMetadata>> loadAll(Set<? extends String> keys) {
+        Map<String, Optional<ImageMetadata>> loaded = new HashMap<>();
+        keys.forEach(key -> loaded.put(key, Optional.empty()));
+
+        // Batched indexed lookups keep each IN list well below the driver's bind parameter limit
+        List<String> missing = new ArrayList<>(keys);
+        for (int from = 0; from < missing.size(); from += LOOKUP_BATCH_SIZE) {
+            List<String> batch = missing.subList(from, Math.min(from + LOOKUP_BATCH_SIZE, missing.size()));
+            imageMetadataRepository.findAllByS3KeyIn(batch)
+                    .forEach(metadata -> loaded.put(metadata.getS3Key(), Optional.of(metadata)));
+        }
+        log.debug("Loaded metadata of {} keys", keys.size());
+        return loaded;
+    }
+}
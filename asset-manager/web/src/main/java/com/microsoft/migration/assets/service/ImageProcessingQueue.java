@@ -0,0 +1,77 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.spring.messaging.servicebus.core.ServiceBusTemplate;
+import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Queues uploaded images for thumbnail generation in their processing lane.
+ *
+ * Uploads go to the interactive lane unless the client asked for the bulk lane, as an import script does,
+ * or the original is so large that its processing would hold up the small images queued behind it. Each
+ * lane has its own queue, which the worker consumes with its own share of capacity.
+ *
+ * Messages sent are counted in {@code assets.processing.enqueued}, tagged with the lane. Whether a lane's
+ * backlog is small enough to send to right away is up to the {@link BackpressureMonitor}.
+ */
+@Component
+public class ImageProcessingQueue {
+
+    private final ServiceBusTemplate serviceBusTemplate;
+    private final BackpressureMonitor backpressureMonitor;
+    private final DataSize bulkMinSize;
+    private final Map<ProcessingLane, Counter> enqueued = new EnumMap<>(ProcessingLane.class);
+
+    public ImageProcessingQueue(ServiceBusTemplate serviceBusTemplate,
+                                BackpressureMonitor backpressureMonitor,
+                                MeterRegistry registry,
+                                @Value("${storage.processing.bulk-min-size:32MB}") DataSize bulkMinSize) {
+        this.serviceBusTemplate = serviceBusTemplate;
+        this.backpressureMonitor = backpressureMonitor;
+        this.bulkMinSize = bulkMinSize;
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            enqueued.put(lane, Counter.builder("assets.processing.enqueued")
+                    .description("Images queued for thumbnail generation, by processing lane")
+                    .tag("lane", lane.getName())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * The lane for an upload: the requested one, moved to the bulk lane if the original is large
+     */
+    public ProcessingLane laneFor(ProcessingLane requested, long size) {
+        if (requested == ProcessingLane.BULK || size >= bulkMinSize.toBytes()) {
+            return ProcessingLane.BULK;
+        }
+        return ProcessingLane.INTERACTIVE;
+    }
+
+    /**
+     * Send a message for thumbnail generation to the queue of the lane chosen by {@link #laneFor}
+     */
+    public ProcessingLane send(String key, String contentType, String storageType, long size, ProcessingLane requested) {
+        ProcessingLane lane = laneFor(requested, size);
+        ImageProcessingMessage message = new ImageProcessingMessage(
+            key,
+            contentType,
+            storageType,
+            size,
+            System.currentTimeMillis(),
+            lane.getName()
+        );
+        serviceBusTemplate.send(lane.getQueue(), MessageBuilder.withPayload(message).build());
+        enqueued.get(lane).increment();
+        backpressureMonitor.recordSent(lane);
+        return lane;
+    }
+}
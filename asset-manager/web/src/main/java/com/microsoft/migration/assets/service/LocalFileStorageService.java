@@ -1,42 +1,82 @@
 package com.microsoft.migration.assets.service;
 
-import com.microsoft.migration.assets.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.ImageRendition;
+import com.microsoft.migration.assets.model.S3ObjectProperties;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.azure.spring.messaging.servicebus.core.ServiceBusTemplate;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
-import org.springframework.web.multipart.MultipartFile;
 
 import jakarta.annotation.PostConstruct;
 import java.io.*;
 import java.nio.file.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static com.microsoft.migration.assets.config.RabbitConfig.IMAGE_PROCESSING_QUEUE;
 
+/**
+ * Stores originals, thumbnails and renditions in a local directory, for development.
+ *
+ * Uploads follow the {@link BackpressureMonitor} like they do with Blob Storage. Local storage has no metadata
+ * table to record pending uploads in, so uploads of a lane under pressure wait in memory instead, and are
+ * queued at the dispatch rate once the lane has room again. They are lost on restart; the originals stay
+ * stored without a thumbnail until they are uploaded again.
+ */
 @Service
 @Profile("dev") // Only active when dev profile is active
 public class LocalFileStorageService implements StorageService {
 
     private static final Logger logger = LoggerFactory.getLogger(LocalFileStorageService.class);
+
+    private static final Pattern RENDITION_NAME = Pattern.compile("(\\d+)x(\\d+)\\.(\\w+)");
     
-    private final ServiceBusTemplate serviceBusTemplate;
+    private final ImageProcessingQueue imageProcessingQueue;
+    private final BackpressureMonitor backpressureMonitor;
+    private final int dispatchBatchSize;
+    // Uploads deferred under backpressure, oldest first
+    private final Map<ProcessingLane, BlockingDeque<PendingUpload>> pending = new EnumMap<>(ProcessingLane.class);
     
     @Value("${local.storage.directory:../storage}")
     private String storageDirectory;
     
     private Path rootLocation;
 
-    public LocalFileStorageService(ServiceBusTemplate serviceBusTemplate) {
-        this.serviceBusTemplate = serviceBusTemplate;
+    public LocalFileStorageService(ImageProcessingQueue imageProcessingQueue,
+                                   BackpressureMonitor backpressureMonitor,
+                                   @Value("${storage.processing.deferred.dispatch-rate:20}") int dispatchRate,
+                                   @Value("${storage.processing.deferred.dispatch-interval-ms:1000}") long dispatchIntervalMs) {
+        this.imageProcessingQueue = imageProcessingQueue;
+        this.backpressureMonitor = backpressureMonitor;
+        this.dispatchBatchSize = (int) Math.max(dispatchRate * dispatchIntervalMs / 1000, 1);
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            pending.put(lane, new LinkedBlockingDeque<>());
+        }
+    }
+
+    private record PendingUpload(String key, String contentType, long size) {
     }
     
     @PostConstruct
@@ -56,23 +96,8 @@ public class LocalFileStorageService implements StorageService {
         try {
             return Files.walk(rootLocation, 1)
                 .filter(path -> !path.equals(rootLocation))
-                .map(path -> {
-                    try {
-                        String filename = path.getFileName().toString();
-                        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
-                        return new S3StorageItem(
-                            filename,
-                            filename,
-                            Files.size(path),
-                            attrs.lastModifiedTime().toInstant(),
-                            attrs.creationTime().toInstant(),
-                            generateUrl(filename)
-                        );
-                    } catch (IOException e) {
-                        logger.error("Failed to read file attributes", e);
-                        return null;
-                    }
-                })
+                .filter(Files::isRegularFile) // skips the renditions directory
+                .map(this::toStorageItem)
                 .filter(s3StorageItem -> s3StorageItem != null)
                 .collect(Collectors.toList());
         } catch (IOException e) {
@@ -82,48 +107,165 @@ public class LocalFileStorageService implements StorageService {
     }
 
     @Override
-    public void uploadObject(MultipartFile file) throws IOException {
-        if (file.isEmpty()) {
-            throw new IOException("Failed to store empty file");
+    public S3StoragePage listObjects(String cursor, int pageSize) {
+        // Keep only the pageSize + 1 smallest names after the cursor, so memory is bounded by the page size
+        // rather than by the number of files in the directory. The extra name tells us whether a next page exists.
+        PriorityQueue<String> smallest = new PriorityQueue<>(pageSize + 1, Comparator.reverseOrder());
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(rootLocation)) {
+            for (Path path : stream) {
+                if (!Files.isRegularFile(path)) {
+                    continue; // skips the renditions directory
+                }
+                String filename = path.getFileName().toString();
+                if (cursor != null && filename.compareTo(cursor) <= 0) {
+                    continue;
+                }
+                if (smallest.size() <= pageSize) {
+                    smallest.add(filename);
+                } else if (filename.compareTo(smallest.peek()) < 0) {
+                    smallest.poll();
+                    smallest.add(filename);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Failed to list files", e);
+            return new S3StoragePage(new ArrayList<>(), null);
         }
-        
-        String filename = StringUtils.cleanPath(file.getOriginalFilename());
+
+        List<String> names = new ArrayList<>(smallest);
+        Collections.sort(names);
+        boolean hasNext = names.size() > pageSize;
+        if (hasNext) {
+            names = names.subList(0, pageSize);
+        }
+
+        List<S3StorageItem> items = names.stream()
+            .map(name -> toStorageItem(rootLocation.resolve(name)))
+            .filter(s3StorageItem -> s3StorageItem != null)
+            .collect(Collectors.toList());
+        return new S3StoragePage(items, hasNext ? names.get(names.size() - 1) : null);
+    }
+
+    @Override
+    public void uploadObject(String originalFilename, String contentType, InputStream content, ProcessingLane lane) throws IOException {
+        String filename = StringUtils.cleanPath(originalFilename);
         if (filename.contains("..")) {
             throw new IOException("Cannot store file with relative path outside current directory");
         }
         
-        Path targetLocation = rootLocation.resolve(filename);
-        Files.copy(file.getInputStream(), targetLocation, StandardCopyOption.REPLACE_EXISTING);
+        // Check for empty content before an existing file could be replaced
+        PushbackInputStream input = new PushbackInputStream(content);
+        int first = input.read();
+        if (first < 0) {
+            throw new IOException("Failed to store empty file");
+        }
+        input.unread(first);
+
+        Path targetLocation = resolve(filename)
+            .orElseThrow(() -> new IOException("Cannot store file with relative path outside current directory"));
+        long size = Files.copy(input, targetLocation, StandardCopyOption.REPLACE_EXISTING);
         logger.info("Stored file: {}", targetLocation);
 
-        // Send message to queue for thumbnail generation
-        ImageProcessingMessage message = new ImageProcessingMessage(
-            filename,
-            file.getContentType(),
-            getStorageType(),
-            file.getSize()
-        );
-        serviceBusTemplate.send(IMAGE_PROCESSING_QUEUE, MessageBuilder.withPayload(message).build());
+        // Send message to queue for thumbnail generation, or hold it back while the lane's backlog is too large
+        ProcessingLane processingLane = imageProcessingQueue.laneFor(lane, size);
+        if (backpressureMonitor.isUnderPressure(processingLane)) {
+            pending.get(processingLane).add(new PendingUpload(filename, contentType, size));
+            backpressureMonitor.recordDeferred(processingLane);
+        } else {
+            imageProcessingQueue.send(filename, contentType, getStorageType(), size, processingLane);
+        }
+    }
+
+    /**
+     * Queue up to dispatchRate x interval of the oldest deferred uploads of every lane that is not under pressure
+     */
+    @Scheduled(fixedDelayString = "${storage.processing.deferred.dispatch-interval-ms:1000}")
+    public void dispatchPending() {
+        for (Map.Entry<ProcessingLane, BlockingDeque<PendingUpload>> entry : pending.entrySet()) {
+            ProcessingLane lane = entry.getKey();
+            BlockingDeque<PendingUpload> uploads = entry.getValue();
+            int sent = 0;
+            PendingUpload upload;
+            while (sent < dispatchBatchSize && !backpressureMonitor.isUnderPressure(lane)
+                    && (upload = uploads.poll()) != null) {
+                try {
+                    imageProcessingQueue.send(upload.key(), upload.contentType(), getStorageType(), upload.size(), lane);
+                    sent++;
+                } catch (RuntimeException e) {
+                    // Keep its place and try again on the next run
+                    uploads.addFirst(upload);
+                    logger.error("Failed to queue pending uploads of lane {}", lane.getName(), e);
+                    break;
+                }
+            }
+            if (sent > 0) {
+                logger.info("Queued {} pending uploads in lane {}", sent, lane.getName());
+            }
+        }
     }
 
     @Override
     public InputStream getObject(String key) throws IOException {
-        Path file = rootLocation.resolve(key);
-        if (!Files.exists(file)) {
-            throw new FileNotFoundException("File not found: " + key);
+        return new BufferedInputStream(Files.newInputStream(existingFile(key)));
+    }
+
+    @Override
+    public Optional<S3StorageItem> getObjectInfo(String key) throws IOException {
+        return resolve(key).filter(Files::isRegularFile).map(this::toStorageItem);
+    }
+
+    @Override
+    public S3ObjectProperties getObjectProperties(String key) throws IOException {
+        Path file = existingFile(key);
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        return new S3ObjectProperties(
+            key,
+            Files.probeContentType(file),
+            attrs.size(),
+            Instant.ofEpochMilli(lastModified),
+            // Weak validator from modification time and size, like static resource handlers use: different
+            // content written within the same millisecond with the same size would get the same tag
+            "W/\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(attrs.size()) + "\""
+        );
+    }
+
+    @Override
+    public InputStream getObject(String key, long offset, long length) throws IOException {
+        SeekableByteChannel channel = Files.newByteChannel(existingFile(key), StandardOpenOption.READ).position(offset);
+        return new BufferedInputStream(new RangeInputStream(Channels.newInputStream(channel), length));
+    }
+
+    @Override
+    public void transferTo(String key, long offset, long length, OutputStream output) throws IOException {
+        // Fallback for containers without sendfile: the target is a stream, not a socket channel, so the JDK
+        // copies through a heap buffer and this saves nothing over reading the file, it just bounds the range
+        try (FileChannel channel = FileChannel.open(existingFile(key), StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                long transferred = channel.transferTo(position, end - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
         }
-        return new BufferedInputStream(Files.newInputStream(file));
+    }
+
+    @Override
+    public Optional<Path> getLocalFile(String key) {
+        return resolve(key).filter(Files::isRegularFile);
     }
 
     @Override
     public void deleteObject(String key) throws IOException {
         // Delete both original and thumbnail if it exists
-        Path file = rootLocation.resolve(key);
-        if (!Files.exists(file)) {
-            throw new FileNotFoundException("File not found: " + key);
-        }
+        Path file = existingFile(key);
         Files.delete(file);
         logger.info("Deleted file: {}", file);
+        pending.values().forEach(uploads -> uploads.removeIf(upload -> upload.key().equals(key)));
 
         // Try to delete thumbnail if it exists
         try {
@@ -136,6 +278,18 @@ public class LocalFileStorageService implements StorageService {
             // Ignore if thumbnail doesn't exist or can't be deleted
             logger.warn("Could not delete thumbnail for {}: {}", key, e.getMessage());
         }
+
+        // Delete the renditions directory if it exists
+        Path renditionDirectory = rootLocation.resolve(getRenditionPrefix(key));
+        if (Files.isDirectory(renditionDirectory)) {
+            try (DirectoryStream<Path> renditions = Files.newDirectoryStream(renditionDirectory)) {
+                for (Path rendition : renditions) {
+                    Files.deleteIfExists(rendition);
+                }
+            }
+            Files.deleteIfExists(renditionDirectory);
+            logger.info("Deleted renditions of: {}", key);
+        }
     }
 
     @Override
@@ -143,8 +297,106 @@ public class LocalFileStorageService implements StorageService {
         return "local";
     }
     
+    /**
+     * Location of the key in the storage directory; empty for keys that would lead outside it, such as "../x"
+     */
+    private Optional<Path> resolve(String key) {
+        Path file = rootLocation.resolve(key).normalize();
+        return file.startsWith(rootLocation) ? Optional.of(file) : Optional.empty();
+    }
+
+    private Path existingFile(String key) throws FileNotFoundException {
+        return resolve(key).filter(Files::isRegularFile)
+            .orElseThrow(() -> new FileNotFoundException("File not found: " + key));
+    }
+
+    private S3StorageItem toStorageItem(Path path) {
+        try {
+            String filename = path.getFileName().toString();
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            S3StorageItem item = new S3StorageItem(
+                filename,
+                filename,
+                attrs.size(),
+                attrs.lastModifiedTime().toInstant(),
+                attrs.creationTime().toInstant(),
+                generateUrl(filename)
+            );
+            item.setSrcsets(ImageRendition.toSrcsets(findRenditions(filename), this::generateUrl));
+            return item;
+        } catch (IOException e) {
+            logger.error("Failed to read file attributes", e);
+            return null;
+        }
+    }
+
+    /**
+     * Local storage has no metadata, so renditions are found from their "{width}x{height}.{format}" file names
+     */
+    private List<ImageRendition> findRenditions(String key) {
+        Path directory = rootLocation.resolve(getRenditionPrefix(key));
+        List<ImageRendition> renditions = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return renditions;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                Matcher matcher = RENDITION_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    String renditionKey = getRenditionPrefix(key) + path.getFileName();
+                    renditions.add(new ImageRendition(renditionKey, generateUrl(renditionKey), matcher.group(3),
+                        Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)), Files.size(path)));
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("Could not read renditions of {}: {}", key, e.getMessage());
+        }
+        return renditions;
+    }
+
     private String generateUrl(String key) {
         // Generate a URL for the object (simplified path)
         return "/s3/view/" + key;
     }
-}
\ No newline at end of file
+
+    /**
+     * Stops reading after the given number of bytes
+     */
+    private static final class RangeInputStream extends FilterInputStream {
+        private long remaining;
+
+        RangeInputStream(InputStream content, long length) {
+            super(content);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
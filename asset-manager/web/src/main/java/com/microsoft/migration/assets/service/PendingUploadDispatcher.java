@@ -0,0 +1,120 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ImageMetadata;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues uploads that were deferred under backpressure, once their lane has room again.
+ *
+ * Each run takes up to dispatchRate x interval of the oldest pending uploads of every lane that is not under
+ * pressure, so a drained backlog is refilled at a controlled rate rather than all at once. An upload is taken
+ * by clearing its pending mark in its own transaction, so it is queued by one node only, and sent once that
+ * has committed. If sending fails the pending mark is restored and the run stops for that lane.
+ *
+ * Delivery is at least once: a send that reached Service Bus but reported a failure, or a node stopping
+ * between the send and the restore, can queue an upload twice or leave it unqueued until it is uploaded
+ * again. The worker writes the thumbnail and renditions under keys derived from the original and replaces
+ * the recorded renditions as a whole, so processing an upload twice gives the same result.
+ *
+ * Pending uploads are published as {@code assets.processing.pending}, tagged with the lane.
+ */
+@Slf4j
+@Component
+@Profile("!dev")
+public class PendingUploadDispatcher {
+
+    private final ImageMetadataRepository imageMetadataRepository;
+    private final ImageProcessingQueue imageProcessingQueue;
+    private final BackpressureMonitor backpressureMonitor;
+    private final StorageService storageService;
+    private final ImageMetadataCache imageMetadataCache;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Map<ProcessingLane, AtomicLong> pending = new EnumMap<>(ProcessingLane.class);
+
+    public PendingUploadDispatcher(ImageMetadataRepository imageMetadataRepository,
+                                   ImageProcessingQueue imageProcessingQueue,
+                                   BackpressureMonitor backpressureMonitor,
+                                   StorageService storageService,
+                                   ImageMetadataCache imageMetadataCache,
+                                   TransactionTemplate transactionTemplate,
+                                   MeterRegistry registry,
+                                   @Value("${storage.processing.deferred.dispatch-rate:20}") int dispatchRate,
+                                   @Value("${storage.processing.deferred.dispatch-interval-ms:1000}") long dispatchIntervalMs) {
+        this.imageMetadataRepository = imageMetadataRepository;
+        this.imageProcessingQueue = imageProcessingQueue;
+        this.backpressureMonitor = backpressureMonitor;
+        this.storageService = storageService;
+        this.imageMetadataCache = imageMetadataCache;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = (int) Math.max(dispatchRate * dispatchIntervalMs / 1000, 1);
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            AtomicLong count = new AtomicLong();
+            Gauge.builder("assets.processing.pending", count, AtomicLong::get)
+                    .description("Uploads deferred under backpressure and waiting to be queued")
+                    .tag("lane", lane.getName())
+                    .register(registry);
+            pending.put(lane, count);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${storage.processing.deferred.dispatch-interval-ms:1000}")
+    public void dispatch() {
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            try {
+                if (!backpressureMonitor.isUnderPressure(lane)) {
+                    dispatch(lane);
+                }
+                pending.get(lane).set(imageMetadataRepository.countByProcessingLaneAndPendingSinceIsNotNull(lane.getName()));
+            } catch (RuntimeException e) {
+                // The uploads stay pending and are picked up by a later run
+                log.error("Failed to queue pending uploads of lane {}", lane.getName(), e);
+            }
+        }
+    }
+
+    private void dispatch(ProcessingLane lane) {
+        List<ImageMetadata> uploads = imageMetadataRepository
+                .findByProcessingLaneAndPendingSinceIsNotNullOrderByPendingSinceAsc(lane.getName(), PageRequest.of(0, batchSize));
+        int sent = 0;
+        for (ImageMetadata upload : uploads) {
+            Integer taken = transactionTemplate.execute(status -> imageMetadataRepository.clearPendingSince(upload.getId()));
+            if (taken == null || taken == 0) {
+                // Queued by another node in the meantime
+                continue;
+            }
+            imageMetadataCache.invalidate(upload.getS3Key());
+            try {
+                imageProcessingQueue.send(upload.getS3Key(), upload.getContentType(), storageService.getStorageType(),
+                        upload.getSize() != null ? upload.getSize() : 0, lane);
+            } catch (RuntimeException e) {
+                transactionTemplate.execute(status ->
+                        imageMetadataRepository.restorePendingSince(upload.getId(), upload.getPendingSince()));
+                imageMetadataCache.invalidate(upload.getS3Key());
+                if (sent > 0) {
+                    log.info("Queued {} pending uploads in lane {}", sent, lane.getName());
+                }
+                throw e;
+            }
+            sent++;
+        }
+        if (sent > 0) {
+            log.info("Queued {} pending uploads in lane {}", sent, lane.getName());
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponse;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the metadata table, which the gallery is listed from, in line with the container.
+ *
+ * Each run diffs one page of the container listing against the table, continuing where the previous run
+ * stopped and starting over after the last page, so a full pass costs one listing call per page spread
+ * over time. Objects without metadata are recorded and queued for processing as if just uploaded, once
+ * they are older than the grace period that covers uploads still in progress. Metadata rows in the key
+ * range of the page whose object is gone are removed, after checking the object really doesn't exist,
+ * as the database and storage don't order keys exactly alike.
+ */
+@Slf4j
+@Component
+@Profile("!dev")
+@ConditionalOnProperty(name = "storage.reconcile.enabled", havingValue = "true", matchIfMissing = true)
+public class StorageReconciler {
+
+    private static final String BLOB_DELIMITER = "/";
+
+    private final BlobServiceClient blobServiceClient;
+    private final ImageMetadataRepository imageMetadataRepository;
+    private final ImageMetadataCache imageMetadataCache;
+    private final AwsS3Service storageService;
+    private final String containerName;
+    private final int pageSize;
+    private final Duration gracePeriod;
+    private final Counter missingMetadata;
+    private final Counter missingObjects;
+
+    // Where the next run continues: the listing's continuation token and the last key of the previous page
+    private String continuationToken;
+    private String previousKey = "";
+
+    public StorageReconciler(BlobServiceClient blobServiceClient,
+                             ImageMetadataRepository imageMetadataRepository,
+                             ImageMetadataCache imageMetadataCache,
+                             AwsS3Service storageService,
+                             MeterRegistry registry,
+                             @Value("${azure.storage.blob.container-name}") String containerName,
+                             @Value("${storage.reconcile.page-size:500}") int pageSize,
+                             @Value("${storage.reconcile.grace-period:10m}") Duration gracePeriod) {
+        this.blobServiceClient = blobServiceClient;
+        this.imageMetadataRepository = imageMetadataRepository;
+        this.imageMetadataCache = imageMetadataCache;
+        this.storageService = storageService;
+        this.containerName = containerName;
+        this.pageSize = pageSize;
+        this.gracePeriod = gracePeriod;
+        this.missingMetadata = Counter.builder("storage.reconcile.drift")
+                .description("Differences between the container and the metadata table found and repaired")
+                .tag("kind", "missing-metadata")
+                .register(registry);
+        this.missingObjects = Counter.builder("storage.reconcile.drift")
+                .description("Differences between the container and the metadata table found and repaired")
+                .tag("kind", "missing-object")
+                .register(registry);
+    }
+
+    @Scheduled(fixedDelayString = "${storage.reconcile.interval-ms:60000}",
+            initialDelayString = "${storage.reconcile.interval-ms:60000}")
+    public void reconcileNextPage() {
+        try {
+            reconcilePage();
+        } catch (RuntimeException e) {
+            // Start the next run over from the beginning
+            log.error("Storage reconciliation failed", e);
+            continuationToken = null;
+            previousKey = "";
+        }
+    }
+
+    private void reconcilePage() {
+        BlobContainerClient containerClient = blobServiceClient.getBlobContainerClient(containerName);
+        PagedIterable<BlobItem> blobs = containerClient.listBlobsByHierarchy(
+                BLOB_DELIMITER, new ListBlobsOptions().setMaxResultsPerPage(pageSize), null);
+        PagedResponse<BlobItem> page = (continuationToken == null ? blobs.streamByPage() : blobs.streamByPage(continuationToken))
+                .findFirst()
+                .orElse(null);
+        List<BlobItem> items = page != null ? page.getValue() : List.of();
+        String nextToken = page != null ? page.getContinuationToken() : null;
+        boolean lastPage = nextToken == null || nextToken.isEmpty();
+
+        // Virtual directories such as renditions/ are not objects
+        List<BlobItem> objects = items.stream()
+                .filter(item -> !Boolean.TRUE.equals(item.isPrefix()))
+                .collect(Collectors.toList());
+        Set<String> names = objects.stream().map(BlobItem::getName).collect(Collectors.toSet());
+
+        if (!names.isEmpty()) {
+            recordMissingMetadata(objects, names);
+        }
+
+        // The page covers the keys after the previous page's last name, up to its own last name
+        Pageable limit = PageRequest.of(0, pageSize * 2);
+        String lastName = items.isEmpty() ? null : items.get(items.size() - 1).getName();
+        if (lastPage) {
+            removeMissingObjects(containerClient, imageMetadataRepository.findS3KeysAfter(previousKey, limit), names);
+        } else if (lastName != null) {
+            removeMissingObjects(containerClient, imageMetadataRepository.findS3KeysInRange(previousKey, lastName, limit), names);
+        }
+
+        continuationToken = lastPage ? null : nextToken;
+        if (lastPage) {
+            previousKey = "";
+        } else if (lastName != null) {
+            previousKey = lastName;
+        }
+    }
+
+    private void recordMissingMetadata(List<BlobItem> objects, Set<String> names) {
+        Set<String> known = new HashSet<>(imageMetadataRepository.findS3KeysIn(names));
+        // Thumbnails are stored next to their originals and have no metadata of their own
+        known.addAll(imageMetadataRepository.findThumbnailKeysIn(names));
+
+        OffsetDateTime settled = OffsetDateTime.now().minus(gracePeriod);
+        for (BlobItem object : objects) {
+            if (known.contains(object.getName()) || object.getProperties().getLastModified().isAfter(settled)) {
+                continue;
+            }
+            try {
+                storageService.recordExistingObject(object.getName(),
+                        object.getProperties().getContentType(), object.getProperties().getContentLength());
+                missingMetadata.increment();
+                log.info("Recorded metadata for {}, which had none", object.getName());
+            } catch (DataIntegrityViolationException e) {
+                // Recorded concurrently, by an upload or another web node
+                log.debug("Metadata for {} already recorded", object.getName());
+            }
+        }
+    }
+
+    private void removeMissingObjects(BlobContainerClient containerClient, List<String> rowKeys, Set<String> names) {
+        for (String key : rowKeys) {
+            if (names.contains(key) || containerClient.getBlobClient(key).exists()) {
+                continue;
+            }
+            imageMetadataRepository.findByS3Key(key).ifPresent(imageMetadataRepository::delete);
+            imageMetadataCache.invalidate(key);
+            missingObjects.increment();
+            log.info("Removed metadata for {}, whose object no longer exists", key);
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package com.microsoft.migration.assets.service;
 
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.S3DeleteResult;
+import com.microsoft.migration.assets.model.S3ObjectProperties;
 import com.microsoft.migration.assets.model.S3StorageItem;
+import com.microsoft.migration.assets.model.S3StoragePage;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Interface for storage operations that can be implemented by different storage providers
@@ -17,22 +26,94 @@ public interface StorageService {
      * List all objects in storage
      */
     List<S3StorageItem> listObjects();
+
+    /**
+     * List one page of objects in storage, starting after the given cursor.
+     * Pass a null cursor for the first page and the returned next cursor for the following ones.
+     */
+    S3StoragePage listObjects(String cursor, int pageSize);
     
     /**
      * Upload file to storage
      */
-    void uploadObject(MultipartFile file) throws IOException;
+    default void uploadObject(MultipartFile file) throws IOException {
+        try (InputStream content = file.getInputStream()) {
+            uploadObject(file.getOriginalFilename(), file.getContentType(), content);
+        }
+    }
+
+    /**
+     * Upload content of unknown length to storage, streaming it through rather than buffering the whole file
+     */
+    default void uploadObject(String filename, String contentType, InputStream content) throws IOException {
+        uploadObject(filename, contentType, content, ProcessingLane.INTERACTIVE);
+    }
+
+    /**
+     * Upload content of unknown length to storage and queue it for processing in the requested lane,
+     * or the bulk lane if it is large
+     */
+    void uploadObject(String filename, String contentType, InputStream content, ProcessingLane lane) throws IOException;
     
     /**
      * Get object from storage by key
      */
     InputStream getObject(String key) throws IOException;
 
+    /**
+     * Look up a single object and its metadata by key, without listing the container
+     */
+    Optional<S3StorageItem> getObjectInfo(String key) throws IOException;
+
+    /**
+     * Get the properties of an object, throwing FileNotFoundException if it doesn't exist
+     */
+    S3ObjectProperties getObjectProperties(String key) throws IOException;
+
+    /**
+     * Get length bytes of an object starting at offset
+     */
+    InputStream getObject(String key, long offset, long length) throws IOException;
+
+    /**
+     * Write length bytes of an object starting at offset to the given stream
+     */
+    default void transferTo(String key, long offset, long length, OutputStream output) throws IOException {
+        try (InputStream input = getObject(key, offset, length)) {
+            input.transferTo(output);
+        }
+    }
+
+    /**
+     * The file backing an object, for storage that keeps objects on the local file system
+     */
+    default Optional<Path> getLocalFile(String key) {
+        return Optional.empty();
+    }
+
     /**
      * Delete object from storage by key
      */
     void deleteObject(String key) throws IOException;
 
+    /**
+     * Delete several objects, reporting the outcome for each key in the order given
+     */
+    default List<S3DeleteResult> deleteObjects(List<String> keys) {
+        List<S3DeleteResult> results = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                deleteObject(key);
+                results.add(S3DeleteResult.deleted(key));
+            } catch (FileNotFoundException e) {
+                results.add(S3DeleteResult.notFound(key));
+            } catch (Exception e) {
+                results.add(S3DeleteResult.failed(key, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
     /**
      * Get the storage type (s3 or local)
      */
@@ -48,4 +129,11 @@ public interface StorageService {
         }
         return key + "_thumbnail";
     }
+
+    /**
+     * Get the prefix under which the worker stores all renditions of a given key
+     */
+    default String getRenditionPrefix(String key) {
+        return "renditions/" + key + "/";
+    }
 }
\ No newline at end of file
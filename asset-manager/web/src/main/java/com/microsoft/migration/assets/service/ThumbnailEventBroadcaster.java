@@ -0,0 +1,57 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ThumbnailReadyEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Keeps track of the browsers subscribed to server-sent events and pushes "thumbnail ready" events to them.
+ */
+@Slf4j
+@Component
+public class ThumbnailEventBroadcaster {
+
+    public static final String THUMBNAIL_READY_EVENT = "thumbnail-ready";
+
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    @Value("${thumbnail.events.sse-timeout-ms:1800000}")
+    private long timeoutMs;
+
+    public ThumbnailEventBroadcaster(ThumbnailEventBus thumbnailEventBus) {
+        thumbnailEventBus.subscribe(this::broadcast);
+    }
+
+    /**
+     * Register a new browser connection
+     */
+    public SseEmitter register() {
+        SseEmitter emitter = new SseEmitter(timeoutMs);
+        emitter.onCompletion(() -> emitters.remove(emitter));
+        emitter.onTimeout(() -> emitters.remove(emitter));
+        emitter.onError(e -> emitters.remove(emitter));
+        emitters.add(emitter);
+        return emitter;
+    }
+
+    private void broadcast(ThumbnailReadyEvent event) {
+        for (SseEmitter emitter : emitters) {
+            try {
+                emitter.send(SseEmitter.event()
+                        .name(THUMBNAIL_READY_EVENT)
+                        .id(event.getKey())
+                        .data(event));
+            } catch (IOException | IllegalStateException e) {
+                // The browser went away, drop the connection
+                log.debug("Dropping closed event stream: {}", e.getMessage());
+                emitters.remove(emitter);
+            }
+        }
+    }
+}
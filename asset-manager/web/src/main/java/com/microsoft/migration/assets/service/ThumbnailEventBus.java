@@ -0,0 +1,38 @@
+package com.microsoft.migration.assets.service;
+
+import com.microsoft.migration.assets.model.ThumbnailReadyEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-memory event bus that fans out "thumbnail ready" events to subscribers within this web node.
+ *
+ * Events arrive from the worker through {@link ThumbnailEventListener}. When the listener is disabled
+ * (thumbnail.events.source=local) this bus is the stand-in for Service Bus and events can be
+ * published to it directly.
+ */
+@Slf4j
+@Component
+public class ThumbnailEventBus {
+
+    private final List<Consumer<ThumbnailReadyEvent>> subscribers = new CopyOnWriteArrayList<>();
+
+    public void subscribe(Consumer<ThumbnailReadyEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    public void publish(ThumbnailReadyEvent event) {
+        for (Consumer<ThumbnailReadyEvent> subscriber : subscribers) {
+            try {
+                subscriber.accept(event);
+            } catch (Exception e) {
+                // One failing subscriber must not prevent delivery to the others
+                log.warn("Thumbnail event subscriber failed for: {}", event.getKey(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.messaging.servicebus.ServiceBusReceivedMessageContext;
+import com.azure.spring.messaging.servicebus.implementation.core.annotation.ServiceBusListener;
+import com.azure.spring.messaging.servicebus.support.ServiceBusMessageHeaders;
+import com.microsoft.migration.assets.model.ThumbnailReadyEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.stereotype.Component;
+
+import static com.microsoft.migration.assets.config.RabbitConfig.THUMBNAIL_EVENTS_TOPIC;
+
+/**
+ * Receives "thumbnail ready" events sent by the worker and hands them to the in-memory {@link ThumbnailEventBus}.
+ *
+ * Events are read from a topic through a subscription created for this node at startup, so every node
+ * receives every event: browsers are connected to any of them, and each has its own metadata cache to
+ * invalidate. The subscription is deleted by Service Bus once the node has stopped receiving from it.
+ *
+ * Disabled with thumbnail.events.source=local, so the gallery can run without Service Bus.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "thumbnail.events.source", havingValue = "servicebus", matchIfMissing = true)
+public class ThumbnailEventListener {
+
+    private final ThumbnailEventBus thumbnailEventBus;
+
+    @ServiceBusListener(destination = THUMBNAIL_EVENTS_TOPIC, group = "#{thumbnailEventsSubscription.subscriptionName}")
+    public void onThumbnailReady(final ThumbnailReadyEvent event,
+                                 @Header(ServiceBusMessageHeaders.RECEIVED_MESSAGE_CONTEXT) ServiceBusReceivedMessageContext context) {
+        try {
+            log.debug("Thumbnail ready: {}", event.getKey());
+            thumbnailEventBus.publish(event);
+        } finally {
+            // Events are only useful while fresh, so they are never redelivered
+            context.complete();
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.microsoft.migration.assets.controller;
+
+import com.microsoft.migration.assets.model.S3ObjectProperties;
+import com.microsoft.migration.assets.service.StorageService;
+import com.microsoft.migration.assets.service.ThumbnailEventBroadcaster;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.flash;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.redirectedUrl;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class S3ControllerTest {
+
+    private static final String KEY = "photo.jpg";
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final String ETAG = "\"0x8DC1\"";
+    private static final Instant LAST_MODIFIED = Instant.parse("2026-01-02T03:04:05Z");
+
+    private StorageService storageService;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        storageService = mock(StorageService.class);
+        S3Controller controller = new S3Controller(storageService, mock(ThumbnailEventBroadcaster.class));
+        ReflectionTestUtils.setField(controller, "viewCacheMaxAge", Duration.ZERO);
+        ReflectionTestUtils.setField(controller, "maxUploadSize", DataSize.ofMegabytes(1));
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        stored(ETAG);
+        doAnswer(invocation -> {
+            long offset = invocation.getArgument(1);
+            long length = invocation.getArgument(2);
+            OutputStream output = invocation.getArgument(3);
+            output.write(CONTENT, (int) offset, (int) length);
+            return null;
+        }).when(storageService).transferTo(eq(KEY), anyLong(), anyLong(), any(OutputStream.class));
+    }
+
+    private void stored(String etag) throws Exception {
+        when(storageService.getObjectProperties(KEY))
+                .thenReturn(new S3ObjectProperties(KEY, "image/jpeg", CONTENT.length, LAST_MODIFIED, etag));
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atZone(ZoneOffset.UTC));
+    }
+
+    private ResultActions view(HttpHeaders headers) throws Exception {
+        // Bodies are streamed asynchronously, answers without one are complete right away
+        ResultActions actions = mockMvc.perform(get("/s3/view/" + KEY).headers(headers));
+        MvcResult result = actions.andReturn();
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)) : actions;
+    }
+
+    private static HttpHeaders range(String range) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RANGE, range);
+        return headers;
+    }
+
+    @Test
+    void servesWholeObject() throws Exception {
+        view(new HttpHeaders())
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, CONTENT.length))
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void servesSingleRange() throws Exception {
+        view(range("bytes=2-5"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 4))
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void servesSuffixRange() throws Exception {
+        view(range("bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void rejectsRangeBeyondObject() throws Exception {
+        view(range("bytes=20-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void servesWholeObjectForMultipleRanges() throws Exception {
+        view(range("bytes=0-1,4-5"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void answersNotModifiedForCurrentEntityTag() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch(ETAG);
+        view(headers).andExpect(status().isNotModified());
+    }
+
+    @Test
+    void servesChangedObjectDespiteIfNoneMatch() throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setIfNoneMatch("\"0x8DC0\"");
+        view(headers).andExpect(status().isOk());
+    }
+
+    @Test
+    void appliesRangeWhenIfRangeEntityTagMatches() throws Exception {
+        HttpHeaders headers = range("bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, ETAG);
+        view(headers)
+                .andExpect(status().isPartialContent())
+                .andExpect(content().string("2345"));
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeEntityTagIsStale() throws Exception {
+        HttpHeaders headers = range("bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, "\"0x8DC0\"");
+        view(headers)
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void ignoresRangeForWeakIfRangeEntityTag() throws Exception {
+        stored("W/\"1a-2b\"");
+        HttpHeaders headers = range("bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, "W/\"1a-2b\"");
+        view(headers)
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void appliesRangeWhenIfRangeDateMatchesExactly() throws Exception {
+        HttpHeaders headers = range("bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, httpDate(LAST_MODIFIED));
+        view(headers).andExpect(status().isPartialContent());
+    }
+
+    @Test
+    void ignoresRangeWhenIfRangeDateIsNotLastModified() throws Exception {
+        HttpHeaders headers = range("bytes=2-5");
+        headers.set(HttpHeaders.IF_RANGE, httpDate(LAST_MODIFIED.plusSeconds(60)));
+        view(headers)
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(CONTENT));
+    }
+
+    @Test
+    void ifRangeDateNeedsStrongLastModified() {
+        Instant now = LAST_MODIFIED.plusMillis(500);
+        S3ObjectProperties justWritten = new S3ObjectProperties(KEY, "image/jpeg", 10, LAST_MODIFIED, ETAG);
+        assertThat(S3Controller.isRangeCurrent(httpDate(LAST_MODIFIED), justWritten, now)).isFalse();
+
+        S3ObjectProperties weak = new S3ObjectProperties(KEY, "image/jpeg", 10, LAST_MODIFIED, "W/\"1a-2b\"");
+        assertThat(S3Controller.isRangeCurrent(httpDate(LAST_MODIFIED), weak, Instant.now())).isFalse();
+    }
+
+    @Test
+    void ignoresRangeForUnparseableIfRange() {
+        S3ObjectProperties properties = new S3ObjectProperties(KEY, "image/jpeg", 10, LAST_MODIFIED, ETAG);
+        assertThat(S3Controller.isRangeCurrent("yesterday", properties, Instant.now())).isFalse();
+        assertThat(S3Controller.isRangeCurrent(null, properties, Instant.now())).isTrue();
+    }
+
+    private ResultActions upload(String filename) throws Exception {
+        String body = "--boundary\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + filename + "\"\r\n"
+                + "Content-Type: image/jpeg\r\n\r\n"
+                + "0123456789\r\n"
+                + "--boundary--\r\n";
+        return mockMvc.perform(post("/s3/upload")
+                .contentType("multipart/form-data; boundary=boundary")
+                .content(body.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void storesUploadUnderItsFileName() throws Exception {
+        upload("photo.jpg").andExpect(redirectedUrl("/s3"));
+        verify(storageService).uploadObject(eq("photo.jpg"), eq("image/jpeg"), any(InputStream.class), any());
+    }
+
+    @Test
+    void stripsClientPathFromUploadFileName() throws Exception {
+        upload("C:\\Users\\me\\Pictures\\photo.jpg").andExpect(redirectedUrl("/s3"));
+        verify(storageService).uploadObject(eq("photo.jpg"), eq("image/jpeg"), any(InputStream.class), any());
+    }
+
+    @Test
+    void stripsParentSegmentsFromUploadFileName() throws Exception {
+        upload("../../etc/photo.jpg").andExpect(redirectedUrl("/s3"));
+        verify(storageService).uploadObject(eq("photo.jpg"), eq("image/jpeg"), any(InputStream.class), any());
+    }
+
+    @Test
+    void rejectsUploadNamedParentDirectory() throws Exception {
+        upload("..")
+                .andExpect(redirectedUrl("/s3/upload"))
+                .andExpect(flash().attributeExists("error"));
+        verify(storageService, never()).uploadObject(anyString(), anyString(), any(InputStream.class), any());
+    }
+}
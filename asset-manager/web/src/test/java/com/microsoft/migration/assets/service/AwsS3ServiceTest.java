@@ -0,0 +1,294 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.core.http.rest.PagedFlux;
+import com.azure.core.http.rest.PagedIterable;
+import com.azure.core.http.rest.PagedResponseBase;
+import com.azure.core.http.rest.Response;
+import com.azure.storage.blob.BlobClient;
+import com.azure.storage.blob.BlobContainerClient;
+import com.azure.storage.blob.BlobServiceClient;
+import com.azure.storage.blob.batch.BlobBatch;
+import com.azure.storage.blob.batch.BlobBatchAsyncClient;
+import com.azure.storage.blob.models.BlobItem;
+import com.azure.storage.blob.models.ListBlobsOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
+import com.microsoft.migration.assets.model.ImageMetadata;
+import com.microsoft.migration.assets.model.ImageRendition;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import com.microsoft.migration.assets.model.S3DeleteResult;
+import com.microsoft.migration.assets.repository.ImageMetadataRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AwsS3ServiceTest {
+
+    private static final String CONTAINER = "images";
+    private static final byte[] CONTENT = "not really a jpeg".getBytes(StandardCharsets.US_ASCII);
+
+    private BlobContainerClient containerClient;
+    private ImageProcessingQueue imageProcessingQueue;
+    private ImageMetadataRepository imageMetadataRepository;
+    private ImageMetadataCache imageMetadataCache;
+    private BlobBatchAsyncClient blobBatchAsyncClient;
+    private MeterRegistry registry;
+    private AwsS3Service service;
+
+    // Names deleted by each batch sent, the status each delete gets and the batches that fail to send
+    private final List<List<String>> sentBatches = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, Integer> deleteStatuses = new HashMap<>();
+    private final Set<String> unsendable = new HashSet<>();
+    private final Map<String, List<String>> blobsByPrefix = new HashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        BlobServiceClient blobServiceClient = mock(BlobServiceClient.class);
+        containerClient = mock(BlobContainerClient.class);
+        when(blobServiceClient.getBlobContainerClient(CONTAINER)).thenReturn(containerClient);
+        when(containerClient.listBlobs(any(ListBlobsOptions.class), any())).thenAnswer(invocation -> {
+            ListBlobsOptions options = invocation.getArgument(0);
+            return pagedBlobs(blobsByPrefix.getOrDefault(options.getPrefix(), List.of()));
+        });
+        when(containerClient.getBlobContainerUrl()).thenReturn("https://account.blob.core.windows.net/" + CONTAINER);
+        when(containerClient.getBlobClient(anyString())).thenAnswer(invocation -> uploadingBlobClient());
+        imageProcessingQueue = mock(ImageProcessingQueue.class);
+        when(imageProcessingQueue.laneFor(any(), anyLong())).thenReturn(ProcessingLane.INTERACTIVE);
+        imageMetadataRepository = mock(ImageMetadataRepository.class);
+        imageMetadataCache = mock(ImageMetadataCache.class);
+        blobBatchAsyncClient = mock(BlobBatchAsyncClient.class);
+        when(blobBatchAsyncClient.getBlobBatch()).thenAnswer(invocation -> blobBatch());
+        registry = new SimpleMeterRegistry();
+
+        service = new AwsS3Service(blobServiceClient, imageProcessingQueue, mock(BackpressureMonitor.class),
+                imageMetadataRepository, imageMetadataCache, registry, mock(DirectUploadSigner.class),
+                blobBatchAsyncClient, new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(service, "containerName", CONTAINER);
+        ReflectionTestUtils.setField(service, "deleteMaxConcurrency", 2);
+        ReflectionTestUtils.setField(service, "uploadBlockSize", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(service, "uploadMaxConcurrency", 4);
+        ReflectionTestUtils.setField(service, "uploadMaxSingleUploadSize", DataSize.ofMegabytes(8));
+    }
+
+    /**
+     * A blob client that reads the whole upload, as the SDK does while sending it
+     */
+    private static BlobClient uploadingBlobClient() {
+        BlobClient blobClient = mock(BlobClient.class);
+        when(blobClient.uploadWithResponse(any(BlobParallelUploadOptions.class), any(), any())).thenAnswer(invocation -> {
+            BlobParallelUploadOptions options = invocation.getArgument(0);
+            options.getDataStream().readAllBytes();
+            return null;
+        });
+        return blobClient;
+    }
+
+    private static PagedIterable<BlobItem> pagedBlobs(List<String> names) {
+        List<BlobItem> items = names.stream().map(name -> new BlobItem().setName(name)).collect(Collectors.toList());
+        return new PagedIterable<>(new PagedFlux<>(() -> Mono.just(new PagedResponseBase<Void, BlobItem>(
+                null, 200, null, items, null, null))));
+    }
+
+    /**
+     * A batch whose deletes get the status set for their blob, 202 by default
+     */
+    @SuppressWarnings("unchecked")
+    private BlobBatch blobBatch() {
+        BlobBatch batch = mock(BlobBatch.class);
+        List<String> names = new ArrayList<>();
+        when(batch.deleteBlob(eq(CONTAINER), anyString())).thenAnswer(invocation -> {
+            String name = invocation.getArgument(1);
+            names.add(name);
+            Response<Void> response = mock(Response.class);
+            when(response.getStatusCode()).thenReturn(deleteStatuses.getOrDefault(name, 202));
+            return response;
+        });
+        when(blobBatchAsyncClient.submitBatchWithResponse(eq(batch), anyBoolean())).thenAnswer(invocation -> {
+            sentBatches.add(names);
+            if (names.stream().anyMatch(unsendable::contains)) {
+                return Mono.error(new IllegalStateException("connection reset"));
+            }
+            return Mono.just(mock(Response.class));
+        });
+        return batch;
+    }
+
+    private static ImageMetadata metadata(String key, String thumbnailKey, String... renditionKeys) {
+        ImageMetadata metadata = new ImageMetadata();
+        metadata.setS3Key(key);
+        metadata.setThumbnailKey(thumbnailKey);
+        for (String renditionKey : renditionKeys) {
+            metadata.getRenditions().add(new ImageRendition(renditionKey, null, "jpg", 150, 150, 100));
+        }
+        return metadata;
+    }
+
+    private List<String> deletedNames() {
+        return sentBatches.stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    @Test
+    void deletesInBatchesOfAtMost256() {
+        List<String> keys = IntStream.range(0, 600).mapToObj(i -> "image-" + i + ".jpg").collect(Collectors.toList());
+        List<S3DeleteResult> results = service.deleteObjects(keys);
+
+        assertThat(results).hasSize(600).allMatch(result -> S3DeleteResult.DELETED.equals(result.getStatus()));
+        // 600 originals, then their 600 thumbnails
+        assertThat(sentBatches).extracting(List::size).containsExactlyInAnyOrder(256, 256, 88, 256, 256, 88);
+        verify(imageMetadataRepository).deleteAllByS3KeyIn(keys);
+        keys.forEach(key -> verify(imageMetadataCache).invalidate(key));
+    }
+
+    @Test
+    void reportsOutcomeOfEachDelete() {
+        deleteStatuses.put("missing.jpg", 404);
+        deleteStatuses.put("locked.jpg", 409);
+        List<S3DeleteResult> results = service.deleteObjects(List.of("a.jpg", "missing.jpg", "locked.jpg", "a.jpg"));
+
+        assertThat(results).extracting(S3DeleteResult::getStatus).containsExactly(S3DeleteResult.DELETED,
+                S3DeleteResult.NOT_FOUND, S3DeleteResult.FAILED, S3DeleteResult.DELETED);
+        // Duplicates are deleted once, and the metadata of a blob that is still there is kept
+        assertThat(sentBatches.get(0)).containsExactly("a.jpg", "missing.jpg", "locked.jpg");
+        verify(imageMetadataRepository).deleteAllByS3KeyIn(List.of("a.jpg", "missing.jpg"));
+    }
+
+    @Test
+    void keepsMetadataWhenBatchFailsToSend() {
+        unsendable.add("a.jpg");
+        List<S3DeleteResult> results = service.deleteObjects(List.of("a.jpg", "b.jpg"));
+
+        assertThat(results).extracting(S3DeleteResult::getStatus)
+                .containsOnly(S3DeleteResult.FAILED);
+        verify(imageMetadataRepository, never()).deleteAllByS3KeyIn(anyCollection());
+    }
+
+    @Test
+    void deletesThumbnailRenditionsAndPrefixOfEachKey() {
+        when(imageMetadataRepository.findAllByS3KeyIn(List.of("a.jpg", "b.jpg")))
+                .thenReturn(List.of(metadata("a.jpg", "a_thumbnail.jpg", "renditions/a.jpg/150x150.jpg")));
+        blobsByPrefix.put("renditions/a.jpg/", List.of("renditions/a.jpg/150x150.jpg", "renditions/a.jpg/300x300.jpg"));
+        blobsByPrefix.put("renditions/b.jpg/", List.of("renditions/b.jpg/150x150.jpg"));
+
+        service.deleteObjects(List.of("a.jpg", "b.jpg"));
+
+        // b.jpg has no metadata, its prefix is cleaned up all the same
+        assertThat(deletedNames()).containsExactlyInAnyOrder("a.jpg", "b.jpg",
+                "a_thumbnail.jpg", "renditions/a.jpg/150x150.jpg", "renditions/a.jpg/300x300.jpg",
+                service.getThumbnailKey("b.jpg"), "renditions/b.jpg/150x150.jpg");
+    }
+
+    @Test
+    void keepsThumbnailSharedWithOtherImage() {
+        when(imageMetadataRepository.findAllByS3KeyIn(List.of("copy.jpg")))
+                .thenReturn(List.of(metadata("copy.jpg", "first_thumbnail.jpg", "renditions/first.jpg/150x150.jpg")));
+        when(imageMetadataRepository.findThumbnailKeysReferencedOutside(List.of("first_thumbnail.jpg"), List.of("copy.jpg")))
+                .thenReturn(List.of("first_thumbnail.jpg"));
+        blobsByPrefix.put("renditions/copy.jpg/", List.of("renditions/copy.jpg/150x150.jpg"));
+
+        service.deleteObjects(List.of("copy.jpg"));
+
+        assertThat(deletedNames()).containsExactly("copy.jpg");
+        verify(imageMetadataRepository).deleteAllByS3KeyIn(List.of("copy.jpg"));
+    }
+
+    private ImageMetadata upload() throws Exception {
+        service.uploadObject("photo.jpg", "image/jpeg", new ByteArrayInputStream(CONTENT), ProcessingLane.INTERACTIVE);
+        ArgumentCaptor<ImageMetadata> saved = ArgumentCaptor.forClass(ImageMetadata.class);
+        verify(imageMetadataRepository).save(saved.capture());
+        return saved.getValue();
+    }
+
+    private double counter(String name, String... tags) {
+        return registry.get(name).tags(tags).counter().count();
+    }
+
+    @Test
+    void hashesUploadedContent() throws Exception {
+        ImageMetadata metadata = upload();
+
+        String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+        assertThat(metadata.getContentHash()).isEqualTo(sha256);
+        assertThat(metadata.getSize()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    void queuesFirstUploadOfContent() throws Exception {
+        ImageMetadata metadata = upload();
+
+        assertThat(metadata.getThumbnailKey()).isNull();
+        verify(imageProcessingQueue).send(eq(metadata.getS3Key()), eq("image/jpeg"), any(), eq((long) CONTENT.length),
+                eq(ProcessingLane.INTERACTIVE));
+        assertThat(counter("assets.upload.dedup", "result", "miss")).isEqualTo(1);
+    }
+
+    @Test
+    void reusesThumbnailAndRenditionsOfIdenticalContent() throws Exception {
+        ImageMetadata existing = metadata("first.jpg", "first_thumbnail.jpg",
+                "renditions/first.jpg/150x150.jpg", "renditions/first.jpg/300x300.jpg");
+        when(imageMetadataRepository.findFirstByContentHashAndThumbnailKeyIsNotNull(anyString()))
+                .thenReturn(Optional.of(existing));
+
+        ImageMetadata metadata = upload();
+
+        assertThat(metadata.getS3Key()).endsWith("-photo.jpg");
+        assertThat(metadata.getThumbnailKey()).isEqualTo("first_thumbnail.jpg");
+        assertThat(metadata.getRenditions()).extracting(ImageRendition::getS3Key)
+                .containsExactly("renditions/first.jpg/150x150.jpg", "renditions/first.jpg/300x300.jpg");
+        // Copies, so the renditions of either image can be removed on their own
+        assertThat(metadata.getRenditions().get(0)).isNotSameAs(existing.getRenditions().get(0));
+        verify(imageMetadataRepository).findFirstByContentHashAndThumbnailKeyIsNotNull(metadata.getContentHash());
+        verify(imageProcessingQueue, never()).send(anyString(), anyString(), any(), anyLong(), any());
+        verify(imageMetadataCache).invalidate(metadata.getS3Key());
+
+        assertThat(counter("assets.upload.dedup", "result", "hit")).isEqualTo(1);
+        assertThat(counter("assets.upload.dedup.saved.bytes", "kind", "download")).isEqualTo(CONTENT.length);
+        assertThat(counter("assets.upload.dedup.saved.bytes", "kind", "renditions")).isEqualTo(200);
+        assertThat(registry.get("assets.upload.dedup.saved.jobs").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void givesIdenticalContentTheSameHash() throws Exception {
+        service.uploadObject("a.jpg", "image/jpeg", new ByteArrayInputStream(CONTENT), ProcessingLane.INTERACTIVE);
+        service.uploadObject("b.jpg", "image/jpeg", new ByteArrayInputStream(CONTENT), ProcessingLane.INTERACTIVE);
+
+        ArgumentCaptor<ImageMetadata> saved = ArgumentCaptor.forClass(ImageMetadata.class);
+        verify(imageMetadataRepository, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues()).extracting(ImageMetadata::getContentHash).doesNotContainNull()
+                .containsOnly(saved.getAllValues().get(0).getContentHash());
+        assertThat(saved.getAllValues()).extracting(ImageMetadata::getS3Key).doesNotHaveDuplicates();
+    }
+}
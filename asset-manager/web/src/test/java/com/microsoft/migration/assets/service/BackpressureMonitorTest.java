@@ -0,0 +1,117 @@
+package com.microsoft.migration.assets.service;
+
+import com.azure.messaging.servicebus.administration.ServiceBusAdministrationClient;
+import com.microsoft.migration.assets.model.ProcessingLane;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class BackpressureMonitorTest {
+
+    private static final ProcessingLane LANE = ProcessingLane.INTERACTIVE;
+    private static final long SECOND = 1_000_000_000L;
+
+    private BackpressureMonitor monitor;
+
+    @BeforeEach
+    void setUp() {
+        // Defers at 1000 queued, or above 200 when draining would take over a minute; resumes below 200
+        monitor = new BackpressureMonitor(mock(ServiceBusAdministrationClient.class), new SimpleMeterRegistry(),
+                true, 1000, 200, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void staysOpenBelowResumeDepth() {
+        monitor.update(LANE, 150, 0);
+        monitor.update(LANE, 199, 10 * SECOND);
+
+        assertThat(monitor.isUnderPressure(LANE)).isFalse();
+    }
+
+    @Test
+    void defersAtMaxDepthWhateverTheDrainRate() {
+        monitor.update(LANE, 0, 0);
+        sent(10_000);
+        monitor.update(LANE, 1000, 10 * SECOND);
+
+        assertThat(monitor.getDrainRate(LANE)).isEqualTo(900.0);
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+    }
+
+    @Test
+    void defersAboveResumeDepthWhenNotSeenDraining() {
+        monitor.update(LANE, 300, 0);
+
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+    }
+
+    @Test
+    void defersAboveResumeDepthWhenDrainingTooSlowly() {
+        monitor.update(LANE, 0, 0);
+        // 100 of 400 sent drained in 10s: 300 left at 10 per second is 30s
+        sent(400);
+        monitor.update(LANE, 300, 10 * SECOND);
+        assertThat(monitor.getDrainRate(LANE)).isEqualTo(10.0);
+        assertThat(monitor.isUnderPressure(LANE)).isFalse();
+
+        // Still 10 per second, 900 left is 90s
+        sent(700);
+        monitor.update(LANE, 900, 20 * SECOND);
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+    }
+
+    @Test
+    void keepsDeferringUntilBelowResumeDepth() {
+        monitor.update(LANE, 1000, 0);
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+
+        // Draining fast enough to clear in seconds, but still above the resume depth
+        monitor.update(LANE, 500, 10 * SECOND);
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+        monitor.update(LANE, 200, 20 * SECOND);
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+
+        monitor.update(LANE, 199, 30 * SECOND);
+        assertThat(monitor.isUnderPressure(LANE)).isFalse();
+    }
+
+    @Test
+    void staysOpenWhenRisingAboveResumeDepthWhileDrainingFast() {
+        monitor.update(LANE, 100, 0);
+        // 100 + 1000 sent - 500 left: 60 per second, 500 take about 8s
+        sent(1000);
+        monitor.update(LANE, 500, 10 * SECOND);
+
+        assertThat(monitor.getDrainRate(LANE)).isEqualTo(60.0);
+        assertThat(monitor.isUnderPressure(LANE)).isFalse();
+    }
+
+    @Test
+    void keepsRateEstimateWhileIdle() {
+        monitor.update(LANE, 100, 0);
+        monitor.update(LANE, 0, 10 * SECOND);
+        assertThat(monitor.getDrainRate(LANE)).isEqualTo(10.0);
+
+        monitor.update(LANE, 0, 20 * SECOND);
+        assertThat(monitor.getDrainRate(LANE)).isEqualTo(10.0);
+    }
+
+    @Test
+    void keepsLanesApart() {
+        monitor.update(LANE, 1000, 0);
+
+        assertThat(monitor.isUnderPressure(LANE)).isTrue();
+        assertThat(monitor.isUnderPressure(ProcessingLane.BULK)).isFalse();
+    }
+
+    private void sent(int messages) {
+        for (int i = 0; i < messages; i++) {
+            monitor.recordSent(LANE);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.microsoft.migration.assets.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GalleryCursorTest {
+
+    @Test
+    void roundTripsPosition() {
+        GalleryCursor cursor = new GalleryCursor(LocalDateTime.of(2024, 5, 17, 9, 30, 12, 123456000),
+                "3f2b8c1e-5d7a-4e2b-9c1d-0a6b7e8f9a0b");
+
+        assertThat(GalleryCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void roundTripsUploadTimeOnTheMinute() {
+        // LocalDateTime prints no seconds when they are zero
+        GalleryCursor cursor = new GalleryCursor(LocalDateTime.of(2024, 1, 1, 0, 0), "id");
+
+        assertThat(GalleryCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void keepsSeparatorInId() {
+        GalleryCursor cursor = new GalleryCursor(LocalDateTime.of(2024, 5, 17, 9, 30), "a|b");
+
+        assertThat(GalleryCursor.decode(cursor.encode())).isEqualTo(cursor);
+    }
+
+    @Test
+    void isSafeInQueryParameter() {
+        String encoded = new GalleryCursor(LocalDateTime.of(2024, 5, 17, 9, 30, 12, 999999000),
+                "été-??>>").encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void startsOverWithoutCursor() {
+        assertThat(GalleryCursor.decode(null)).isNull();
+        assertThat(GalleryCursor.decode("")).isNull();
+    }
+
+    @Test
+    void startsOverForStorageContinuationToken() {
+        assertThat(GalleryCursor.decode("2!84!MDAwMDE5IXBob3Rvcy9jYXQuanBnITAwMDAyOCE5OTk5LTEyLTMxVDIzOjU5OjU5Ljk5OTk5OTlaIQ--"))
+                .isNull();
+    }
+
+    @Test
+    void startsOverForMangledCursor() {
+        assertThat(GalleryCursor.decode("not base64!")).isNull();
+        assertThat(GalleryCursor.decode(encode("no separator"))).isNull();
+        assertThat(GalleryCursor.decode(encode("|id"))).isNull();
+        assertThat(GalleryCursor.decode(encode("yesterday|id"))).isNull();
+    }
+
+    private static String encode(String position) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+}
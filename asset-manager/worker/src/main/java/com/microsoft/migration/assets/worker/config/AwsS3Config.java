@@ -5,6 +5,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 
@@ -19,12 +20,18 @@ public class AwsS3Config {
     @Value("${aws.region}")
     private String region;
 
+    // Concurrent S3 transfers; 0 gives one connection to every listener thread the lanes can run
+    @Value("${aws.s3.max-connections:0}")
+    private int maxConnections;
+
     @Bean
-    public S3Client s3Client() {
+    public S3Client s3Client(ListenerConcurrency listenerConcurrency) {
         AwsBasicCredentials awsCredentials = AwsBasicCredentials.create(accessKeyId, secretKey);
+        int maxConnections = this.maxConnections > 0 ? this.maxConnections : listenerConcurrency.getMaxListenerThreads();
         return S3Client.builder()
                 .region(Region.of(region))
                 .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                .httpClientBuilder(ApacheHttpClient.builder().maxConnections(maxConnections))
                 .build();
     }
 }
\ No newline at end of file
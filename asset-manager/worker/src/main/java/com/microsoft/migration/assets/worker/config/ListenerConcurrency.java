@@ -0,0 +1,58 @@
+package com.microsoft.migration.assets.worker.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Number of listener threads of each lane. Every listener thread runs its download and uploads one at a time,
+ * so the lanes together never hold more S3 connections than {@link #getMaxListenerThreads()}, which sizes the
+ * S3 connection pool unless aws.s3.max-connections is set.
+ */
+@Slf4j
+@Component
+public class ListenerConcurrency {
+
+    private final boolean virtualThreads;
+    private final int consumers;
+    private final int maxConsumers;
+    private final int bulkConsumers;
+
+    // Values of 0 are derived from the number of cores
+    public ListenerConcurrency(@Value("${worker.processing.virtual-threads:false}") boolean virtualThreads,
+                               @Value("${worker.processing.consumers:0}") int consumers,
+                               @Value("${worker.processing.max-consumers:0}") int maxConsumers,
+                               @Value("${worker.lanes.bulk.consumers:0}") int bulkConsumers) {
+        // Downloads and uploads overlap with the CPU stage, so run more consumers than cores.
+        // A blocked virtual thread releases its carrier, so that mode can afford far more consumers.
+        int cores = Runtime.getRuntime().availableProcessors();
+        int defaultConsumers = virtualThreads ? cores * 32 : cores * 2;
+        this.virtualThreads = virtualThreads;
+        this.consumers = consumers > 0 ? consumers : defaultConsumers;
+        this.maxConsumers = Math.max(maxConsumers > 0 ? maxConsumers : defaultConsumers * 2, this.consumers);
+        // The bulk lane gets a quarter of the interactive consumers by default
+        this.bulkConsumers = bulkConsumers > 0 ? bulkConsumers : Math.max(defaultConsumers / 4, 1);
+        log.info("Listener threads: {}-{} interactive, {} bulk, on {} threads", this.consumers, this.maxConsumers,
+                this.bulkConsumers, virtualThreads ? "virtual" : "platform");
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getConsumers() {
+        return consumers;
+    }
+
+    public int getMaxConsumers() {
+        return maxConsumers;
+    }
+
+    public int getBulkConsumers() {
+        return bulkConsumers;
+    }
+
+    public int getMaxListenerThreads() {
+        return maxConsumers + bulkConsumers;
+    }
+}
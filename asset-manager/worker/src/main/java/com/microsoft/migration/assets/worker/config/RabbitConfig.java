@@ -1,28 +1,66 @@
 package com.microsoft.migration.assets.worker.config;
 
+import lombok.RequiredArgsConstructor;
 import org.springframework.amqp.core.AcknowledgeMode;
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import com.microsoft.migration.assets.worker.service.RetryLadder;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.core.QueueBuilder;
 import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
 import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Configuration
+@RequiredArgsConstructor
 public class RabbitConfig {
     public static final String IMAGE_PROCESSING_QUEUE = "image-processing";
+    // Lane for bulk imports and large originals, consumed with a smaller share of the worker
+    public static final String BULK_IMAGE_PROCESSING_QUEUE = "image-processing.bulk";
 
-    // Dead letter queue configuration for the retry mechanism
+    // Dead letter exchange for rejected messages, routed to the first retry tier
     public static final String RETRY_EXCHANGE = "image-processing.retry";
-    public static final String RETRY_QUEUE = "image-processing.retry";
     public static final String RETRY_ROUTING_KEY = "retry";
-    public static final int RETRY_DELAY_MS = 60000; // 1 minute delay
+    public static final String BULK_RETRY_ROUTING_KEY = "bulk.retry";
+
+    // Retry tiers with increasing delays ("image-processing.retry.5s", ...) and the queue for messages out of attempts
+    public static final String RETRY_TIER_QUEUE_PREFIX = "image-processing.retry.";
+    public static final String BULK_RETRY_TIER_QUEUE_PREFIX = "image-processing.bulk.retry.";
+    public static final String PARKING_QUEUE = "image-processing.parking";
+
+    // Notifications sent to the web module when a thumbnail has been generated. The exchange has the name of the
+    // Service Bus topic the web module subscribes to, and copies every event into each queue bound to it: the
+    // durable thumbnail-events queue declared here, and any queue a consumer that needs every event binds itself.
+    public static final String THUMBNAIL_EVENTS_EXCHANGE = "thumbnail-events-topic";
+    public static final String THUMBNAIL_EVENTS_QUEUE = "thumbnail-events";
+    // Stale notifications are useless to the gallery, the same TTL as the web module's topic
+    public static final Duration THUMBNAIL_EVENTS_TTL = Duration.ofMinutes(5);
+
+    // Listener threads run the I/O stages (download, upload, metadata update)
+    private final ListenerConcurrency listenerConcurrency;
+
+    @Value("${worker.retry.delays:5s,30s,5m,30m}")
+    private List<Duration> retryDelays;
+
+    // Messages buffered per consumer, enough to hide the broker round trip between jobs. Messages waiting for
+    // a batched ack or a metadata commit count against it, so keep it well above worker.ack.batch-size.
+    @Value("${worker.processing.prefetch:10}")
+    private int prefetch;
 
     @Bean
     public Queue imageProcessingQueue() {
@@ -33,14 +71,34 @@ public class RabbitConfig {
     }
 
     @Bean
-    public Queue retryQueue() {
-        return QueueBuilder.durable(RETRY_QUEUE)
+    public Queue bulkImageProcessingQueue() {
+        return QueueBuilder.durable(BULK_IMAGE_PROCESSING_QUEUE)
+                .withArgument("x-dead-letter-exchange", RETRY_EXCHANGE)
+                .withArgument("x-dead-letter-routing-key", BULK_RETRY_ROUTING_KEY)
+                .build();
+    }
+
+    @Bean
+    public Declarables retryTierQueues() {
+        // Expired messages go back to the processing queue of their lane for their next attempt
+        return new Declarables(Arrays.stream(ProcessingLane.values())
+                .flatMap(lane -> retryDelays.stream().map(delay -> retryTierQueue(lane, delay)))
+                .collect(Collectors.toList()));
+    }
+
+    private Queue retryTierQueue(ProcessingLane lane, Duration delay) {
+        return QueueBuilder.durable(RetryLadder.tierQueueName(lane, delay))
                 .withArgument("x-dead-letter-exchange", "")
-                .withArgument("x-dead-letter-routing-key", IMAGE_PROCESSING_QUEUE)
-                .withArgument("x-message-ttl", RETRY_DELAY_MS)
+                .withArgument("x-dead-letter-routing-key", lane.getQueue())
+                .withArgument("x-message-ttl", delay.toMillis())
                 .build();
     }
 
+    @Bean
+    public Queue parkingQueue() {
+        return QueueBuilder.durable(PARKING_QUEUE).build();
+    }
+
     @Bean
     public DirectExchange retryExchange() {
         return new DirectExchange(RETRY_EXCHANGE);
@@ -48,10 +106,37 @@ public class RabbitConfig {
 
     @Bean
     public Binding retryBinding() {
+        // Rejected messages (e.g. when moving them to their tier failed) start again at the first tier
+        return firstTierBinding(ProcessingLane.INTERACTIVE);
+    }
+
+    @Bean
+    public Binding bulkRetryBinding() {
+        return firstTierBinding(ProcessingLane.BULK);
+    }
+
+    private Binding firstTierBinding(ProcessingLane lane) {
         return BindingBuilder
-                .bind(retryQueue())
+                .bind(retryDelays.isEmpty() ? parkingQueue() : retryTierQueue(lane, retryDelays.get(0)))
                 .to(retryExchange())
-                .with(RETRY_ROUTING_KEY);
+                .with(lane.getRetryRoutingKey());
+    }
+
+    @Bean
+    public FanoutExchange thumbnailEventsExchange() {
+        return new FanoutExchange(THUMBNAIL_EVENTS_EXCHANGE);
+    }
+
+    @Bean
+    public Queue thumbnailEventsQueue() {
+        // Declared as before, without arguments; the publisher sets the TTL on each event instead
+        return QueueBuilder.durable(THUMBNAIL_EVENTS_QUEUE).build();
+    }
+
+    @Bean
+    public Binding thumbnailEventsBinding() {
+        // Without a bound queue the exchange would drop every event
+        return BindingBuilder.bind(thumbnailEventsQueue()).to(thumbnailEventsExchange());
     }
 
     @Bean
@@ -63,11 +148,37 @@ public class RabbitConfig {
     public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
             ConnectionFactory connectionFactory,
             SimpleRabbitListenerContainerFactoryConfigurer configurer) {
+        return listenerContainerFactory(connectionFactory, configurer, "thumbnail-io-",
+                listenerConcurrency.getConsumers(), listenerConcurrency.getMaxConsumers());
+    }
+
+    /**
+     * Listener containers of the bulk lane. A fixed, smaller number of consumers keeps bulk downloads and
+     * uploads from crowding out the interactive lane; the CPU stage pool caps its share of the cores.
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory bulkRabbitListenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer) {
+        return listenerContainerFactory(connectionFactory, configurer, "thumbnail-bulk-io-",
+                listenerConcurrency.getBulkConsumers(), listenerConcurrency.getBulkConsumers());
+    }
+
+    private SimpleRabbitListenerContainerFactory listenerContainerFactory(
+            ConnectionFactory connectionFactory,
+            SimpleRabbitListenerContainerFactoryConfigurer configurer,
+            String threadNamePrefix, int concurrentConsumers, int maxConcurrentConsumers) {
         SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
         configurer.configure(factory, connectionFactory);
         factory.setMessageConverter(jsonMessageConverter());
         factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
         factory.setDefaultRequeueRejected(false);
+        factory.setConcurrentConsumers(concurrentConsumers);
+        factory.setMaxConcurrentConsumers(maxConcurrentConsumers);
+        if (listenerConcurrency.isVirtualThreads()) {
+            factory.setTaskExecutor(new VirtualThreadTaskExecutor(threadNamePrefix));
+        }
+        factory.setPrefetchCount(prefetch);
         return factory;
     }
 
@@ -0,0 +1,77 @@
+package com.microsoft.migration.assets.worker.config;
+
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+import com.microsoft.migration.assets.worker.image.Java2DThumbnailEngine;
+import com.microsoft.migration.assets.worker.image.RasterPool;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.SeparableThumbnailEngine;
+import com.microsoft.migration.assets.worker.image.ThumbnailEngine;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+@Configuration
+public class ThumbnailConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "thumbnail.engine", havingValue = "separable", matchIfMissing = true)
+    public ThumbnailEngine separableThumbnailEngine(
+            @Value("${thumbnail.engine.filter:LANCZOS3}") SeparableThumbnailEngine.Filter filter,
+            @Value("${thumbnail.engine.sharpen:" + SeparableThumbnailEngine.DEFAULT_SHARPEN + "}") float sharpen,
+            RasterPool rasterPool) {
+        return new SeparableThumbnailEngine(filter, sharpen, rasterPool);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "thumbnail.engine", havingValue = "java2d")
+    public ThumbnailEngine java2DThumbnailEngine(
+            @Value("${thumbnail.engine.progressive-threshold:" + Java2DThumbnailEngine.DEFAULT_PROGRESSIVE_THRESHOLD + "}") double progressiveThreshold,
+            RasterPool rasterPool) {
+        return new Java2DThumbnailEngine(progressiveThreshold, rasterPool);
+    }
+
+    @Bean
+    public ImageDecoder imageDecoder(
+            @Value("${thumbnail.decode.oversample:" + ImageDecoder.DEFAULT_OVERSAMPLE + "}") int oversample,
+            RasterPool rasterPool) {
+        return new ImageDecoder(oversample, rasterPool);
+    }
+
+    @Bean
+    public ImageEncoder imageEncoder(
+            @Value("${thumbnail.encode.jpeg-quality:" + ImageEncoder.DEFAULT_JPEG_QUALITY + "}") float jpegQuality,
+            RasterPool rasterPool) {
+        return new ImageEncoder(jpegQuality, rasterPool);
+    }
+
+    @Bean
+    public RasterPool rasterPool(@Value("${thumbnail.raster-pool.max-retained-bytes:67108864}") long maxRetainedBytes) {
+        // Retained per CPU stage thread; covers a decoded 12 MP original and the resize cascade from it
+        return new RasterPool(maxRetainedBytes);
+    }
+
+    @Bean
+    public RenditionSet renditionSet(
+            @Value("${thumbnail.renditions.sizes:150,300,600,1200}") int[] sizes,
+            @Value("${thumbnail.renditions.formats:jpg}") List<String> formats) {
+        return new RenditionSet(sizes, formats);
+    }
+
+    @Bean
+    public ByteBufferPool originalBufferPool(@Value("${thumbnail.buffer-pool.size:16}") int size) {
+        // Originals are held between download and decode; only buffers of typical upload sizes are kept
+        return new ByteBufferPool(size, 1024 * 1024, 16 * 1024 * 1024);
+    }
+
+    @Bean
+    public ByteBufferPool thumbnailBufferPool(@Value("${thumbnail.buffer-pool.size:16}") int size) {
+        // Each message holds one buffer per thumbnail and rendition; encoded images up to 1200px are well below 1 MB,
+        // buffers grown by unusually large ones are not kept
+        return new ByteBufferPool(size * 4, 256 * 1024, 4 * 1024 * 1024);
+    }
+}
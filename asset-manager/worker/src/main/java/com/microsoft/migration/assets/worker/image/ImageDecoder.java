@@ -0,0 +1,139 @@
+package com.microsoft.migration.assets.worker.image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.spi.ImageReaderSpi;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Decodes images directly at reduced resolution when only a thumbnail is needed.
+ *
+ * The reader is asked for the image dimensions first, and the largest source subsampling factor that
+ * still leaves at least {@code oversample} times the target size is applied while decoding. The pixels
+ * that would be dropped by the resize are never materialized, so heap usage scales with the thumbnail
+ * size rather than with the original. Subsampling drops pixels without filtering, so the oversample
+ * margin leaves the resize enough detail to remove the aliasing; 3 keeps the final thumbnail well above
+ * {@link ImageQuality#MIN_PSNR_DB} compared with a full decode.
+ *
+ * Readers are kept per thread and reset between images, so the service lookup and codec setup happen once
+ * per format and thread. The decoded image is read into a destination from the {@link RasterPool} whenever
+ * the reader's default image type can be recreated from its type alone.
+ */
+public class ImageDecoder {
+
+    public static final int DEFAULT_OVERSAMPLE = 3;
+
+    private final int oversample;
+    private final RasterPool rasterPool;
+
+    // Idle readers of the calling thread, most recently used first
+    private final ThreadLocal<List<ImageReader>> readers = ThreadLocal.withInitial(ArrayList::new);
+
+    public ImageDecoder() {
+        this(DEFAULT_OVERSAMPLE);
+    }
+
+    public ImageDecoder(int oversample) {
+        this(oversample, RasterPool.unpooled());
+    }
+
+    public ImageDecoder(int oversample, RasterPool rasterPool) {
+        this.oversample = Math.max(oversample, 1);
+        this.rasterPool = rasterPool;
+    }
+
+    /**
+     * Decode the image for a thumbnail whose longest side is maxDimension.
+     * Returns null if no registered reader can decode the input, like {@link ImageIO#read}.
+     */
+    public BufferedImage decode(Path input, int maxDimension) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input.toFile())) {
+            return decode(stream, maxDimension);
+        }
+    }
+
+    /**
+     * Decode the image for a thumbnail whose longest side is maxDimension.
+     * Returns null if no registered reader can decode the input. The stream is not closed.
+     */
+    public BufferedImage decode(ImageInputStream stream, int maxDimension) throws IOException {
+        if (stream == null) {
+            return null;
+        }
+        ImageReader reader = acquireReader(stream);
+        if (reader == null) {
+            return null;
+        }
+
+        boolean completed = false;
+        try {
+            reader.setInput(stream, true, true);
+            ImageReadParam param = reader.getDefaultReadParam();
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int factor = subsamplingFactor(width, height, maxDimension);
+            if (factor > 1) {
+                param.setSourceSubsampling(factor, factor, 0, 0);
+            }
+            param.setDestination(destination(reader, (width + factor - 1) / factor, (height + factor - 1) / factor));
+            BufferedImage image = reader.read(0, param);
+            completed = true;
+            return image;
+        } finally {
+            releaseReader(reader, completed);
+        }
+    }
+
+    /**
+     * An idle reader of this thread that can decode the stream, or a new one from the registry
+     */
+    private ImageReader acquireReader(ImageInputStream stream) throws IOException {
+        List<ImageReader> idle = readers.get();
+        for (int i = 0; i < idle.size(); i++) {
+            ImageReaderSpi provider = idle.get(i).getOriginatingProvider();
+            if (provider != null && provider.canDecodeInput(stream)) {
+                return idle.remove(i);
+            }
+        }
+        Iterator<ImageReader> registered = ImageIO.getImageReaders(stream);
+        return registered.hasNext() ? registered.next() : null;
+    }
+
+    private void releaseReader(ImageReader reader, boolean completed) {
+        if (completed) {
+            reader.reset();
+            readers.get().add(0, reader);
+        } else {
+            // Don't reuse a reader that failed halfway through an image
+            reader.dispose();
+        }
+    }
+
+    /**
+     * A pooled image of the reader's default type, or null to let the reader allocate one
+     */
+    private BufferedImage destination(ImageReader reader, int width, int height) throws IOException {
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (!types.hasNext()) {
+            return null;
+        }
+        int imageType = types.next().getBufferedImageType();
+        return RasterPool.isPoolable(imageType) ? rasterPool.acquire(imageType, width, height) : null;
+    }
+
+    /**
+     * Largest subsampling factor that keeps the longest side at or above oversample * maxDimension.
+     */
+    public int subsamplingFactor(int width, int height, int maxDimension) {
+        int longestSide = Math.max(width, height);
+        return Math.max(longestSide / (maxDimension * oversample), 1);
+    }
+}
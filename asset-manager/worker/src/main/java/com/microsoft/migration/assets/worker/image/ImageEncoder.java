@@ -0,0 +1,146 @@
+package com.microsoft.migration.assets.worker.image;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes thumbnails and renditions in their output format.
+ *
+ * JPEG is written at an explicit compression quality, with transparent images composited onto white as
+ * JPEG has no alpha channel. PNG is written with the least compression. Other formats use the default
+ * settings of their ImageIO writer.
+ *
+ * JPEG and PNG writers are kept per thread together with their write parameters, and reset between images,
+ * so the service lookup and codec setup happen once per format and thread. The JPEG writer is given
+ * byte-interleaved images, as it copies packed int pixels row by row into int arrays of three samples each;
+ * the converted or flattened copy comes from the {@link RasterPool}.
+ */
+public class ImageEncoder {
+
+    // Higher compression quality (0.95 for maximum clarity)
+    public static final float DEFAULT_JPEG_QUALITY = 0.95f;
+
+    private final float jpegQuality;
+    private final RasterPool rasterPool;
+
+    // Writers of the calling thread by format, taken out while in use
+    private final ThreadLocal<Map<String, PooledWriter>> writers = ThreadLocal.withInitial(HashMap::new);
+
+    public ImageEncoder() {
+        this(DEFAULT_JPEG_QUALITY);
+    }
+
+    public ImageEncoder(float jpegQuality) {
+        this(jpegQuality, RasterPool.unpooled());
+    }
+
+    public ImageEncoder(float jpegQuality, RasterPool rasterPool) {
+        this.jpegQuality = jpegQuality;
+        this.rasterPool = rasterPool;
+    }
+
+    public void write(BufferedImage resultImage, String extension, ImageOutputStream outputStream) throws IOException {
+        String format = extension.toLowerCase(Locale.ROOT);
+        if (format.equals("jpeg")) {
+            format = "jpg";
+        }
+
+        // Write the thumbnail with optimized settings for different formats
+        if (format.equals("jpg")) {
+            // JPEG has no alpha channel, so transparent images are composited onto white
+            if (resultImage.getColorModel().hasAlpha()) {
+                resultImage = flatten(resultImage);
+            } else if (resultImage.getType() == BufferedImage.TYPE_INT_RGB) {
+                resultImage = toInterleaved(resultImage);
+            }
+            writePooled(resultImage, format, outputStream);
+        } else if (format.equals("png")) {
+            writePooled(resultImage, format, outputStream);
+        } else {
+            // For other formats, use regular write method
+            ImageIO.write(resultImage, extension, outputStream);
+        }
+    }
+
+    private void writePooled(BufferedImage image, String format, ImageOutputStream outputStream) throws IOException {
+        Map<String, PooledWriter> idle = writers.get();
+        PooledWriter pooled = idle.remove(format);
+        if (pooled == null) {
+            pooled = createWriter(format);
+        }
+
+        try {
+            pooled.writer().setOutput(outputStream);
+            pooled.writer().write(null, new IIOImage(image, null, null), pooled.param());
+        } catch (IOException | RuntimeException e) {
+            // Don't reuse a writer that failed halfway through an image
+            pooled.writer().dispose();
+            throw e;
+        }
+        pooled.writer().reset();
+        idle.put(format, pooled);
+    }
+
+    private PooledWriter createWriter(String format) {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (format.equals("jpg")) {
+            // For JPEG, we need to set compression quality
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+        } else if (param.canWriteCompressed()) {
+            // For PNG, use compression level 0 (no compression) for best quality
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType("Deflate");
+            param.setCompressionQuality(0.0f); // 0 = best quality for PNG
+        }
+        return new PooledWriter(writer, param);
+    }
+
+    private BufferedImage flatten(BufferedImage image) {
+        BufferedImage opaque = rasterPool.acquire(BufferedImage.TYPE_3BYTE_BGR, image.getWidth(), image.getHeight());
+        Graphics2D g = opaque.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return opaque;
+    }
+
+    /**
+     * Copy of a packed RGB image with byte-interleaved BGR samples, which the JPEG writer encodes to the same bytes
+     */
+    private BufferedImage toInterleaved(BufferedImage image) {
+        WritableRaster raster = image.getRaster();
+        if (raster.getParent() != null || raster.getDataBuffer().getOffset() != 0
+                || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+            return image;
+        }
+        int[] source = ((DataBufferInt) raster.getDataBuffer()).getData();
+        BufferedImage interleaved = rasterPool.acquire(BufferedImage.TYPE_3BYTE_BGR, image.getWidth(), image.getHeight());
+        byte[] destination = ((DataBufferByte) interleaved.getRaster().getDataBuffer()).getData();
+        for (int i = 0, offset = 0, pixels = image.getWidth() * image.getHeight(); i < pixels; i++, offset += 3) {
+            int pixel = source[i];
+            destination[offset] = (byte) pixel;
+            destination[offset + 1] = (byte) (pixel >> 8);
+            destination[offset + 2] = (byte) (pixel >> 16);
+        }
+        return interleaved;
+    }
+
+    private record PooledWriter(ImageWriter writer, ImageWriteParam param) {
+    }
+}
@@ -0,0 +1,53 @@
+package com.microsoft.migration.assets.worker.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Objective quality measures used to compare thumbnail engines against each other.
+ */
+public final class ImageQuality {
+
+    /**
+     * Minimum PSNR in dB that a thumbnail engine must reach against the {@link Java2DThumbnailEngine}
+     * output for the same input. Above ~30 dB differences between 8-bit images are hard to see.
+     * Resampling and sharpening are compared one at a time: sharpening amplifies whatever aliasing the
+     * resampling left, so two differently filtered results drift apart once both are sharpened.
+     */
+    public static final double MIN_PSNR_DB = 30.0;
+
+    private ImageQuality() {
+    }
+
+    /**
+     * Peak signal-to-noise ratio over the RGB channels of two images of the same size, in dB.
+     * Identical images return {@link Double#POSITIVE_INFINITY}.
+     */
+    public static double psnr(BufferedImage expected, BufferedImage actual) {
+        int width = expected.getWidth();
+        int height = expected.getHeight();
+        if (actual.getWidth() != width || actual.getHeight() != height) {
+            throw new IllegalArgumentException("Images differ in size: " + width + "x" + height
+                    + " vs " + actual.getWidth() + "x" + actual.getHeight());
+        }
+
+        int[] expectedRow = new int[width];
+        int[] actualRow = new int[width];
+        double squaredError = 0.0;
+        for (int y = 0; y < height; y++) {
+            expected.getRGB(0, y, width, 1, expectedRow, 0, width);
+            actual.getRGB(0, y, width, 1, actualRow, 0, width);
+            for (int x = 0; x < width; x++) {
+                for (int shift = 0; shift <= 16; shift += 8) {
+                    int difference = ((expectedRow[x] >> shift) & 0xFF) - ((actualRow[x] >> shift) & 0xFF);
+                    squaredError += difference * difference;
+                }
+            }
+        }
+
+        double meanSquaredError = squaredError / (3.0 * width * height);
+        if (meanSquaredError == 0.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return 10.0 * Math.log10(255.0 * 255.0 / meanSquaredError);
+    }
+}
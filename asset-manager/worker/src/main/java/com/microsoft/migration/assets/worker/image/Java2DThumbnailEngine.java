@@ -0,0 +1,129 @@
+package com.microsoft.migration.assets.worker.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ConvolveOp;
+import java.awt.image.Kernel;
+
+/**
+ * Thumbnail engine based on Java2D: progressive halving with bicubic interpolation followed by a
+ * 3x3 sharpening convolution. Intermediate and destination images come from the {@link RasterPool}.
+ */
+public class Java2DThumbnailEngine implements ThumbnailEngine {
+
+    /**
+     * Images are halved while they are more than this factor larger than the target
+     */
+    public static final double DEFAULT_PROGRESSIVE_THRESHOLD = 1.5;
+
+    private static final ConvolveOp SHARPEN = new ConvolveOp(new Kernel(3, 3, new float[] {
+        0, -0.2f, 0,
+        -0.2f, 1.8f, -0.2f,
+        0, -0.2f, 0
+    }), ConvolveOp.EDGE_NO_OP, null);
+
+    private final double progressiveThreshold;
+    private final RasterPool rasterPool;
+
+    public Java2DThumbnailEngine() {
+        this(DEFAULT_PROGRESSIVE_THRESHOLD);
+    }
+
+    public Java2DThumbnailEngine(double progressiveThreshold) {
+        this(progressiveThreshold, RasterPool.unpooled());
+    }
+
+    public Java2DThumbnailEngine(double progressiveThreshold, RasterPool rasterPool) {
+        this.progressiveThreshold = progressiveThreshold;
+        this.rasterPool = rasterPool;
+    }
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        // Multi-step scaling for higher quality
+        // This progressive scaling produces better results than single-step scaling
+        BufferedImage result = progressiveScaling(source, targetWidth, targetHeight);
+
+        // Sharpen the image to enhance details
+        return sharpenImage(result);
+    }
+
+    /**
+     * Performs progressive scaling of the image for better quality.
+     * This method gradually scales down the image in multiple steps rather than all at once.
+     */
+    public BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
+        // Current dimensions
+        int currentWidth = source.getWidth();
+        int currentHeight = source.getHeight();
+        
+        // Don't scale up images that are already smaller than target size
+        if (currentWidth <= targetWidth && currentHeight <= targetHeight) {
+            return source;
+        }
+        
+        // Use a multi-step approach for higher quality
+        BufferedImage result = source;
+        
+        // Scale down in multiple steps for better quality (not more than 50% each step)
+        while (currentWidth > targetWidth * progressiveThreshold || currentHeight > targetHeight * progressiveThreshold) {
+            int newWidth = Math.max(currentWidth / 2, targetWidth);
+            int newHeight = Math.max(currentHeight / 2, targetHeight);
+            
+            result = scaleImage(result, newWidth, newHeight);
+            
+            currentWidth = newWidth;
+            currentHeight = newHeight;
+        }
+        
+        // Final scaling to exact target dimensions
+        if (currentWidth != targetWidth || currentHeight != targetHeight) {
+            result = scaleImage(result, targetWidth, targetHeight);
+        }
+        
+        return result;
+    }
+    
+    /**
+     * Scale an image to specific dimensions using high quality settings.
+     */
+    public BufferedImage scaleImage(BufferedImage source, int width, int height) {
+        // Take the result image from the pool, preserving transparency for images with alpha channel
+        BufferedImage result = rasterPool.acquire(
+                source.getTransparency() != BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB,
+                width, height);
+        
+        // Set up the rendering process with maximum quality settings
+        Graphics2D g2d = result.createGraphics();
+        // Replace rather than blend, a pooled image still holds the pixels of its previous use
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
+        g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
+        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        
+        // Draw the scaled image
+        g2d.drawImage(source, 0, 0, width, height, null);
+        g2d.dispose();
+        
+        return result;
+    }
+    
+    /**
+     * Apply a sharpening filter to enhance image clarity
+     */
+    public BufferedImage sharpenImage(BufferedImage image) {
+        // Use a compatible destination image to avoid potential issues with some image types
+        BufferedImage output = rasterPool.acquire(
+                image.getTransparency() != BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB,
+                image.getWidth(), image.getHeight());
+        
+        // Apply the filter
+        return SHARPEN.filter(image, output);
+    }
+}
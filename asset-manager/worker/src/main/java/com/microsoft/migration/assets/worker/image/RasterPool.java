@@ -0,0 +1,106 @@
+package com.microsoft.migration.assets.worker.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Thread-confined pool of destination images, keyed by image type and dimensions.
+ *
+ * Each thread has its own arena. Images acquired by a thread stay in use until that thread calls
+ * {@link #recycle()}, typically once a message's thumbnail and renditions have been encoded, after which
+ * they are handed out again for the next message. Two acquires of the same type and size between recycles
+ * always return distinct images. The content of a reused image is left as it was: callers must overwrite
+ * every pixel, as the engines, the decoder and the encoder do.
+ *
+ * At most maxRetainedBytes of pixel data are kept per thread, in use and free together. Images beyond that
+ * are allocated as usual and left to the garbage collector, and the least recently released free images
+ * are dropped to make room for sizes that are needed now. A pool with no retained bytes allocates every
+ * image, for callers that never recycle.
+ */
+public class RasterPool {
+
+    private final long maxRetainedBytes;
+    private final ThreadLocal<Arena> arenas = ThreadLocal.withInitial(Arena::new);
+
+    public RasterPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = Math.max(maxRetainedBytes, 0);
+    }
+
+    /**
+     * A pool that never retains images
+     */
+    public static RasterPool unpooled() {
+        return new RasterPool(0);
+    }
+
+    /**
+     * Whether images of this type can be recreated from the type alone; indexed types carry their own palette
+     */
+    public static boolean isPoolable(int imageType) {
+        return imageType != BufferedImage.TYPE_CUSTOM
+                && imageType != BufferedImage.TYPE_BYTE_INDEXED
+                && imageType != BufferedImage.TYPE_BYTE_BINARY;
+    }
+
+    /**
+     * An image of the given type and dimensions with undefined content, owned by the calling thread until it recycles
+     */
+    public BufferedImage acquire(int imageType, int width, int height) {
+        if (maxRetainedBytes == 0 || !isPoolable(imageType)) {
+            return new BufferedImage(width, height, imageType);
+        }
+        return arenas.get().acquire(imageType, width, height);
+    }
+
+    /**
+     * Return every image acquired by the calling thread to its free list
+     */
+    public void recycle() {
+        if (maxRetainedBytes > 0) {
+            arenas.get().recycle();
+        }
+    }
+
+    private static long bytes(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    private final class Arena {
+        private final ArrayDeque<BufferedImage> free = new ArrayDeque<>();
+        private final List<BufferedImage> inUse = new ArrayList<>();
+        private long retainedBytes;
+
+        BufferedImage acquire(int imageType, int width, int height) {
+            Iterator<BufferedImage> candidates = free.iterator();
+            while (candidates.hasNext()) {
+                BufferedImage image = candidates.next();
+                if (image.getType() == imageType && image.getWidth() == width && image.getHeight() == height) {
+                    candidates.remove();
+                    inUse.add(image);
+                    return image;
+                }
+            }
+
+            BufferedImage image = new BufferedImage(width, height, imageType);
+            long size = bytes(image);
+            while (retainedBytes + size > maxRetainedBytes && !free.isEmpty()) {
+                retainedBytes -= bytes(free.removeFirst());
+            }
+            if (retainedBytes + size <= maxRetainedBytes) {
+                retainedBytes += size;
+                inUse.add(image);
+            }
+            return image;
+        }
+
+        void recycle() {
+            free.addAll(inUse);
+            inUse.clear();
+        }
+    }
+}
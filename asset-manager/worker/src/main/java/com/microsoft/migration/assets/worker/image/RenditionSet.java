@@ -0,0 +1,113 @@
+package com.microsoft.migration.assets.worker.image;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The configured set of rendition sizes and formats, and the resize cascade that produces all of them
+ * from a single decoded image.
+ *
+ * Sizes are maximum dimensions, like the 600px thumbnail. The cascade works from the largest size down
+ * and resizes each one from the smallest image produced so far that is still {@link #CASCADE_RATIO} times
+ * larger, so small renditions don't pay for resampling the full decoded image.
+ */
+@Slf4j
+public class RenditionSet {
+
+    /**
+     * Minimum ratio between a cascade source and its target; below this the resampled (and sharpened)
+     * intermediate would visibly soften or over-sharpen the result
+     */
+    public static final int CASCADE_RATIO = 3;
+
+    private final int[] sizes;
+    private final List<String> formats;
+
+    public RenditionSet(int[] sizes, List<String> formats) {
+        this.sizes = Arrays.stream(sizes).filter(size -> size > 0).distinct().sorted().toArray();
+
+        List<String> supported = new ArrayList<>();
+        for (String format : formats) {
+            String name = format.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty() || supported.contains(name)) {
+                continue;
+            }
+            if (ImageIO.getImageWritersByFormatName(name).hasNext()) {
+                supported.add(name);
+            } else {
+                // e.g. WebP needs an ImageIO writer plugin on the classpath
+                log.warn("No image writer available for rendition format '{}', skipping it", name);
+            }
+        }
+        this.formats = Collections.unmodifiableList(supported);
+    }
+
+    /**
+     * Rendition sizes, smallest first
+     */
+    public int[] getSizes() {
+        return sizes.clone();
+    }
+
+    public List<String> getFormats() {
+        return formats;
+    }
+
+    public boolean isEmpty() {
+        return sizes.length == 0 || formats.isEmpty();
+    }
+
+    public int getLargestSize() {
+        return sizes.length == 0 ? 0 : sizes[sizes.length - 1];
+    }
+
+    /**
+     * Resize the source to each of the given maximum dimensions, returned by size in descending order.
+     * Images are never scaled up, so for small sources several sizes can map to images of equal dimensions.
+     */
+    public static Map<Integer, BufferedImage> cascade(BufferedImage source, ThumbnailEngine engine, int... maxDimensions) {
+        int[] descending = Arrays.stream(maxDimensions).filter(size -> size > 0).distinct()
+                .map(size -> -size).sorted().map(size -> -size).toArray();
+
+        Map<Integer, BufferedImage> results = new LinkedHashMap<>();
+        for (int maxDimension : descending) {
+            BufferedImage input = source;
+            for (BufferedImage candidate : results.values()) {
+                if (Math.max(candidate.getWidth(), candidate.getHeight()) >= maxDimension * CASCADE_RATIO) {
+                    input = candidate;
+                }
+            }
+            int[] target = fit(source.getWidth(), source.getHeight(), maxDimension);
+            // Keep the proportions of the decoded original even when resizing from an intermediate
+            results.put(maxDimension, engine.resize(input, target[0], target[1]));
+        }
+        return results;
+    }
+
+    /**
+     * Dimensions that fit the given maximum dimension while preserving the aspect ratio
+     */
+    public static int[] fit(int width, int height, int maxDimension) {
+        double aspectRatio = (double) width / height;
+        if (width > height) {
+            return new int[] {maxDimension, Math.max((int) (maxDimension / aspectRatio), 1)};
+        }
+        return new int[] {Math.max((int) (maxDimension * aspectRatio), 1), maxDimension};
+    }
+
+    public static String contentType(String format) {
+        return switch (format) {
+            case "jpg", "jpeg" -> "image/jpeg";
+            default -> "image/" + format;
+        };
+    }
+}
@@ -0,0 +1,372 @@
+package com.microsoft.migration.assets.worker.image;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thumbnail engine that resamples in a single pass per axis with a separable kernel, working directly on
+ * packed int[] pixels.
+ *
+ * The horizontal pass writes unrounded, unclamped float samples, so the overshoot of the Lanczos lobes and of
+ * the sharpening survives into the vertical pass and values are rounded and clamped to 8 bits once, at the end.
+ *
+ * Sharpening is folded into the resampling weights: each output weight vector is combined with its
+ * neighbours using a [-s, 1 + 2s, -s] filter, which applied on both axes approximates the 3x3 sharpening
+ * convolution of {@link Java2DThumbnailEngine} without a separate full-image pass. Scratch buffers and
+ * the weights of recently used scale factors are kept per thread, and the destination image comes from the
+ * {@link RasterPool}, so a warmed-up thread resizes without allocating.
+ */
+public class SeparableThumbnailEngine implements ThumbnailEngine {
+
+    public enum Filter {
+        LANCZOS3(3.0) {
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x >= 3.0) {
+                    return 0.0;
+                }
+                return sinc(x) * sinc(x / 3.0);
+            }
+        },
+        MITCHELL(2.0) {
+            private static final double B = 1.0 / 3.0;
+            private static final double C = 1.0 / 3.0;
+
+            @Override
+            double weight(double x) {
+                x = Math.abs(x);
+                if (x < 1.0) {
+                    return ((12 - 9 * B - 6 * C) * x * x * x + (-18 + 12 * B + 6 * C) * x * x + (6 - 2 * B)) / 6.0;
+                }
+                if (x < 2.0) {
+                    return ((-B - 6 * C) * x * x * x + (6 * B + 30 * C) * x * x + (-12 * B - 48 * C) * x + (8 * B + 24 * C)) / 6.0;
+                }
+                return 0.0;
+            }
+        };
+
+        private final double support;
+
+        Filter(double support) {
+            this.support = support;
+        }
+
+        abstract double weight(double x);
+
+        private static double sinc(double x) {
+            if (x == 0.0) {
+                return 1.0;
+            }
+            x *= Math.PI;
+            return Math.sin(x) / x;
+        }
+    }
+
+    /**
+     * Sharpening strength roughly equivalent to the 1.8 / -0.2 kernel of {@link Java2DThumbnailEngine}
+     */
+    public static final float DEFAULT_SHARPEN = 0.15f;
+
+    // Weight vectors kept per thread, enough for the thumbnail and renditions of a few original sizes
+    private static final int MAX_CACHED_CONTRIBUTIONS = 32;
+
+    private final Filter filter;
+    private final float sharpen;
+    private final RasterPool rasterPool;
+
+    // Scratch buffers reused by each worker thread
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    public SeparableThumbnailEngine() {
+        this(Filter.LANCZOS3, DEFAULT_SHARPEN);
+    }
+
+    public SeparableThumbnailEngine(Filter filter, float sharpen) {
+        this(filter, sharpen, RasterPool.unpooled());
+    }
+
+    public SeparableThumbnailEngine(Filter filter, float sharpen, RasterPool rasterPool) {
+        this.filter = filter;
+        this.sharpen = sharpen;
+        this.rasterPool = rasterPool;
+    }
+
+    @Override
+    public BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+
+        // Don't scale up images that are already smaller than target size, but still sharpen them
+        if (sourceWidth <= targetWidth && sourceHeight <= targetHeight) {
+            targetWidth = sourceWidth;
+            targetHeight = sourceHeight;
+        }
+
+        boolean alpha = source.getTransparency() != BufferedImage.OPAQUE;
+        Scratch buffers = scratch.get();
+        Contributions horizontal = buffers.contributions(sourceWidth, targetWidth);
+        Contributions vertical = buffers.contributions(sourceHeight, targetHeight);
+
+        // Samples per pixel of the intermediate and the accumulator: red, green, blue and, if present, alpha
+        int samples = alpha ? 4 : 3;
+        int[] row = buffers.row(sourceWidth);
+        float[][] channels = buffers.channels(sourceWidth);
+        float[] intermediate = buffers.intermediate(targetWidth * sourceHeight * samples);
+        float[] accumulator = buffers.accumulator(targetWidth * samples);
+
+        // Horizontal pass: every source row is split into channel planes once, then resampled to the target width
+        int rowLength = targetWidth * samples;
+        for (int y = 0; y < sourceHeight; y++) {
+            readRow(source, y, row);
+            splitChannels(row, sourceWidth, channels, alpha);
+            resampleRow(channels, intermediate, y * rowLength, horizontal, samples);
+        }
+
+        // Vertical pass: target rows are accumulated from the intermediate rows straight into the destination
+        BufferedImage result = rasterPool.acquire(alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB,
+                targetWidth, targetHeight);
+        int[] destination = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < targetHeight; y++) {
+            Arrays.fill(accumulator, 0, rowLength, 0f);
+            int start = vertical.start[y];
+            float[] weights = vertical.weights[y];
+            for (int k = 0; k < weights.length; k++) {
+                float weight = weights[k];
+                int offset = (start + k) * rowLength;
+                for (int i = 0; i < rowLength; i++) {
+                    accumulator[i] += weight * intermediate[offset + i];
+                }
+            }
+            int offset = y * targetWidth;
+            for (int x = 0, a = 0; x < targetWidth; x++, a += samples) {
+                destination[offset + x] = alpha
+                        ? unpremultiply(accumulator[a + 3], accumulator[a], accumulator[a + 1], accumulator[a + 2])
+                        : pack(255f, accumulator[a], accumulator[a + 1], accumulator[a + 2]);
+            }
+        }
+        return result;
+    }
+
+    private void resampleRow(float[][] channels, float[] intermediate, int offset, Contributions contributions, int samples) {
+        float[] red = channels[0];
+        float[] green = channels[1];
+        float[] blue = channels[2];
+        float[] alphas = channels[3];
+        int targetWidth = contributions.start.length;
+        for (int x = 0, i = offset; x < targetWidth; x++, i += samples) {
+            float r = 0f, g = 0f, b = 0f;
+            int start = contributions.start[x];
+            float[] weights = contributions.weights[x];
+            for (int k = 0; k < weights.length; k++) {
+                float weight = weights[k];
+                r += weight * red[start + k];
+                g += weight * green[start + k];
+                b += weight * blue[start + k];
+            }
+            intermediate[i] = r;
+            intermediate[i + 1] = g;
+            intermediate[i + 2] = b;
+            if (samples == 4) {
+                float a = 0f;
+                for (int k = 0; k < weights.length; k++) {
+                    a += weights[k] * alphas[start + k];
+                }
+                intermediate[i + 3] = a;
+            }
+        }
+    }
+
+    /**
+     * Unpack a row into channel planes, premultiplied when the image has an alpha channel.
+     */
+    private static void splitChannels(int[] row, int width, float[][] channels, boolean alpha) {
+        float[] red = channels[0];
+        float[] green = channels[1];
+        float[] blue = channels[2];
+        float[] alphas = channels[3];
+        for (int x = 0; x < width; x++) {
+            int pixel = row[x];
+            float factor = 1f;
+            if (alpha) {
+                int a = pixel >>> 24;
+                alphas[x] = a;
+                factor = a / 255f;
+            }
+            red[x] = ((pixel >> 16) & 0xFF) * factor;
+            green[x] = ((pixel >> 8) & 0xFF) * factor;
+            blue[x] = (pixel & 0xFF) * factor;
+        }
+    }
+
+    /**
+     * Read one row of packed ARGB pixels. Common decoder outputs are read straight from their data buffers.
+     */
+    private static void readRow(BufferedImage source, int y, int[] row) {
+        int width = source.getWidth();
+        WritableRaster raster = source.getRaster();
+        boolean plainRaster = raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getOffset() == 0;
+
+        if (plainRaster && source.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            byte[] data = ((DataBufferByte) raster.getDataBuffer()).getData();
+            int offset = y * width * 3;
+            for (int x = 0; x < width; x++, offset += 3) {
+                row[x] = 0xFF000000
+                        | (data[offset + 2] & 0xFF) << 16
+                        | (data[offset + 1] & 0xFF) << 8
+                        | (data[offset] & 0xFF);
+            }
+        } else if (plainRaster && source.getType() == BufferedImage.TYPE_INT_ARGB) {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            System.arraycopy(data, y * width, row, 0, width);
+        } else if (plainRaster && source.getType() == BufferedImage.TYPE_INT_RGB) {
+            int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                row[x] = 0xFF000000 | data[offset + x];
+            }
+        } else {
+            source.getRGB(0, y, width, 1, row, 0, width);
+        }
+    }
+
+    /**
+     * Compute the (sharpened) weight vector of every target pixel along one axis.
+     */
+    private Contributions contributions(int sourceSize, int targetSize) {
+        double scale = (double) targetSize / sourceSize;
+        double filterScale = Math.max(1.0 / scale, 1.0);
+        double support = filter.support * filterScale;
+
+        int[] start = new int[targetSize];
+        float[][] weights = new float[targetSize][];
+        for (int i = 0; i < targetSize; i++) {
+            double center = (i + 0.5) / scale - 0.5;
+            int left = Math.max((int) Math.ceil(center - support), 0);
+            int right = Math.min((int) Math.floor(center + support), sourceSize - 1);
+            float[] w = new float[right - left + 1];
+            double total = 0.0;
+            for (int j = left; j <= right; j++) {
+                double weight = filter.weight((j - center) / filterScale);
+                w[j - left] = (float) weight;
+                total += weight;
+            }
+            if (total != 0.0) {
+                for (int k = 0; k < w.length; k++) {
+                    w[k] = (float) (w[k] / total);
+                }
+            }
+            start[i] = left;
+            weights[i] = w;
+        }
+
+        if (sharpen <= 0f || targetSize < 2) {
+            return new Contributions(start, weights);
+        }
+
+        // Fold [-s, 1 + 2s, -s] between neighbouring target pixels into the weights; edges reuse their own vector
+        int[] sharpenedStart = new int[targetSize];
+        float[][] sharpenedWeights = new float[targetSize][];
+        for (int i = 0; i < targetSize; i++) {
+            int previous = Math.max(i - 1, 0);
+            int next = Math.min(i + 1, targetSize - 1);
+            int left = start[previous];
+            int right = start[next] + weights[next].length - 1;
+            float[] w = new float[right - left + 1];
+            addWeights(w, left, start[i], weights[i], 1f + 2f * sharpen);
+            addWeights(w, left, start[previous], weights[previous], -sharpen);
+            addWeights(w, left, start[next], weights[next], -sharpen);
+            sharpenedStart[i] = left;
+            sharpenedWeights[i] = w;
+        }
+        return new Contributions(sharpenedStart, sharpenedWeights);
+    }
+
+    private static void addWeights(float[] target, int targetStart, int start, float[] weights, float factor) {
+        int offset = start - targetStart;
+        for (int k = 0; k < weights.length; k++) {
+            target[offset + k] += factor * weights[k];
+        }
+    }
+
+    private static int pack(float a, float r, float g, float b) {
+        return clamp(a) << 24 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+    }
+
+    private static int unpremultiply(float a, float r, float g, float b) {
+        int alpha = clamp(a);
+        if (alpha == 0) {
+            return 0;
+        }
+        float factor = 255f / alpha;
+        return alpha << 24 | clamp(r * factor) << 16 | clamp(g * factor) << 8 | clamp(b * factor);
+    }
+
+    private static int clamp(float value) {
+        int rounded = (int) (value + 0.5f);
+        return rounded < 0 ? 0 : Math.min(rounded, 255);
+    }
+
+    private record Contributions(int[] start, float[][] weights) {
+    }
+
+    private final class Scratch {
+        private final Map<Long, Contributions> contributions =
+                new LinkedHashMap<>(MAX_CACHED_CONTRIBUTIONS, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<Long, Contributions> eldest) {
+                        return size() > MAX_CACHED_CONTRIBUTIONS;
+                    }
+                };
+        private int[] row = new int[0];
+        private float[] intermediate = new float[0];
+        private float[] accumulator = new float[0];
+        private float[][] channels = new float[4][0];
+
+        Contributions contributions(int sourceSize, int targetSize) {
+            long key = (long) sourceSize << 32 | targetSize;
+            Contributions cached = contributions.get(key);
+            if (cached == null) {
+                cached = SeparableThumbnailEngine.this.contributions(sourceSize, targetSize);
+                contributions.put(key, cached);
+            }
+            return cached;
+        }
+
+        int[] row(int size) {
+            if (row.length < size) {
+                row = new int[size];
+            }
+            return row;
+        }
+
+        float[] intermediate(int size) {
+            if (intermediate.length < size) {
+                intermediate = new float[size];
+            }
+            return intermediate;
+        }
+
+        float[][] channels(int size) {
+            if (channels[0].length < size) {
+                channels = new float[4][size];
+            }
+            return channels;
+        }
+
+        float[] accumulator(int size) {
+            if (accumulator.length < size) {
+                accumulator = new float[size];
+            }
+            return accumulator;
+        }
+    }
+}
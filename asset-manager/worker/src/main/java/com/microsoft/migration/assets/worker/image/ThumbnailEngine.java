@@ -0,0 +1,15 @@
+package com.microsoft.migration.assets.worker.image;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Resizes decoded images into thumbnails. Implementations include any sharpening in the result.
+ */
+public interface ThumbnailEngine {
+
+    /**
+     * Resize the source image to the target dimensions. Images that are already smaller than the
+     * target are not scaled up.
+     */
+    BufferedImage resize(BufferedImage source, int targetWidth, int targetHeight);
+}
@@ -1,15 +1,29 @@
 package com.microsoft.migration.assets.worker.model;
 
+import jakarta.persistence.CollectionTable;
+import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.OrderBy;
 import jakarta.persistence.PrePersist;
 import jakarta.persistence.PreUpdate;
+import jakarta.persistence.Table;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Entity
+@Table(indexes = {
+    @Index(name = "idx_image_metadata_s3_key", columnList = "s3Key", unique = true),
+    @Index(name = "idx_image_metadata_content_hash", columnList = "contentHash"),
+    @Index(name = "idx_image_metadata_uploaded_at_id", columnList = "uploadedAt DESC, id DESC")
+})
 @Data
 @NoArgsConstructor
 public class ImageMetadata {
@@ -20,8 +34,15 @@ public class ImageMetadata {
     private Long size;
     private String s3Key;
     private String s3Url;
+    private String contentHash; // hex SHA-256 of the original, shared by uploads of identical content
     private String thumbnailKey;
     private String thumbnailUrl;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "image_rendition", joinColumns = @JoinColumn(name = "image_metadata_id"))
+    @OrderBy("format, width")
+    private List<ImageRendition> renditions = new ArrayList<>();
+
     private LocalDateTime uploadedAt;
     private LocalDateTime lastModified;
 
@@ -12,4 +12,6 @@ public class ImageProcessingMessage {
     private String contentType;
     private String storageType; // "s3" or "local"
     private long size;
+    private long enqueuedAt; // epoch millis, 0 for messages sent before it was added
+    private String lane; // "interactive" or "bulk", null for messages sent before it was added
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package com.microsoft.migration.assets.worker.model;
+
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One resized copy of an image, stored under the image's rendition prefix
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImageRendition {
+    private String s3Key;
+    private String s3Url;
+    private String format; // file extension, e.g. "jpg" or "webp"
+    private int width;
+    private int height;
+    private long size;
+}
@@ -0,0 +1,48 @@
+package com.microsoft.migration.assets.worker.model;
+
+import java.util.Locale;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.BULK_IMAGE_PROCESSING_QUEUE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.BULK_RETRY_ROUTING_KEY;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.BULK_RETRY_TIER_QUEUE_PREFIX;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.IMAGE_PROCESSING_QUEUE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.RETRY_ROUTING_KEY;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.RETRY_TIER_QUEUE_PREFIX;
+
+/**
+ * Processing lane of a message, given by the queue it was consumed from. Each lane has its own retry tiers,
+ * so a retried message comes back to the lane it left. Interactive jobs go first on the CPU stage pool.
+ */
+public enum ProcessingLane {
+    INTERACTIVE(IMAGE_PROCESSING_QUEUE, RETRY_ROUTING_KEY, RETRY_TIER_QUEUE_PREFIX),
+    BULK(BULK_IMAGE_PROCESSING_QUEUE, BULK_RETRY_ROUTING_KEY, BULK_RETRY_TIER_QUEUE_PREFIX);
+
+    private final String queue;
+    private final String retryRoutingKey;
+    private final String retryTierQueuePrefix;
+
+    ProcessingLane(String queue, String retryRoutingKey, String retryTierQueuePrefix) {
+        this.queue = queue;
+        this.retryRoutingKey = retryRoutingKey;
+        this.retryTierQueuePrefix = retryTierQueuePrefix;
+    }
+
+    public String getQueue() {
+        return queue;
+    }
+
+    public String getRetryRoutingKey() {
+        return retryRoutingKey;
+    }
+
+    public String getRetryTierQueuePrefix() {
+        return retryTierQueuePrefix;
+    }
+
+    /**
+     * Tag of the lane's meters, and its name in {@link ImageProcessingMessage#getLane()}
+     */
+    public String tag() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,276 +1,413 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.image.ImageDecoder;
+import com.microsoft.migration.assets.worker.image.ImageEncoder;
+import com.microsoft.migration.assets.worker.image.RasterPool;
+import com.microsoft.migration.assets.worker.image.RenditionSet;
+import com.microsoft.migration.assets.worker.image.ThumbnailEngine;
 import com.microsoft.migration.assets.worker.model.ImageProcessingMessage;
+import com.microsoft.migration.assets.worker.model.ImageRendition;
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import com.microsoft.migration.assets.worker.service.ProcessingMetrics.Outcome;
+import com.microsoft.migration.assets.worker.service.ProcessingMetrics.Stage;
+import com.microsoft.migration.assets.worker.util.ByteBufferPool;
 import com.microsoft.migration.assets.worker.util.StorageUtil;
 import com.rabbitmq.client.Channel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.support.AmqpHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.Header;
 
 import javax.imageio.ImageIO;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.BULK_IMAGE_PROCESSING_QUEUE;
 import static com.microsoft.migration.assets.worker.config.RabbitConfig.IMAGE_PROCESSING_QUEUE;
 
 @Slf4j
 public abstract class AbstractFileProcessingService implements FileProcessor {
 
+    // Increased size significantly for better clarity (600px max dimension)
+    private static final int MAX_DIMENSION = 600;
+
+    @Autowired
+    private ThumbnailEventPublisher thumbnailEventPublisher;
+
+    @Autowired
+    private ThumbnailEngine thumbnailEngine;
+
+    @Autowired
+    private ImageDecoder imageDecoder;
+
+    @Autowired
+    private ImageEncoder imageEncoder;
+
+    @Autowired
+    private RasterPool rasterPool;
+
+    @Autowired
+    private ByteBufferPool originalBufferPool;
+
+    @Autowired
+    private ByteBufferPool thumbnailBufferPool;
+
+    @Autowired
+    private RenditionSet renditionSet;
+
+    @Autowired
+    private CpuStageExecutor cpuStageExecutor;
+
+    @Autowired
+    private ProcessingMetrics processingMetrics;
+
+    @Autowired
+    private AckAggregator ackAggregator;
+
+    @Autowired
+    private RetryLadder retryLadder;
+
+    // Originals up to this size are processed in memory, larger ones go through temporary files.
+    // The size in the message is declared by the uploader, so the in-memory download also stops at this size.
+    @Value("${thumbnail.streaming.max-size:33554432}")
+    private long streamingMaxSize;
+
     @RabbitListener(queues = IMAGE_PROCESSING_QUEUE)
-    public void processImage(final ImageProcessingMessage message, 
-                           Channel channel, 
+    public void processImage(final ImageProcessingMessage message,
+                           Message amqpMessage,
+                           Channel channel,
                            @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
-        boolean processingSuccess = false;
-        Path tempDir = null;
-        Path originalFile = null;
-        Path thumbnailFile = null;
+        process(message, amqpMessage, channel, deliveryTag, ProcessingLane.INTERACTIVE);
+    }
+
+    /**
+     * Bulk imports and large originals, consumed by fewer listener threads than the interactive lane
+     */
+    @RabbitListener(queues = BULK_IMAGE_PROCESSING_QUEUE, containerFactory = "bulkRabbitListenerContainerFactory")
+    public void processBulkImage(final ImageProcessingMessage message,
+                                 Message amqpMessage,
+                                 Channel channel,
+                                 @Header(AmqpHeaders.DELIVERY_TAG) long deliveryTag) {
+        process(message, amqpMessage, channel, deliveryTag, ProcessingLane.BULK);
+    }
+
+    private void process(ImageProcessingMessage message, Message amqpMessage, Channel channel, long deliveryTag,
+                         ProcessingLane lane) {
+        ProcessingMetrics.Job job = processingMetrics.start(message.getSize(), message.getEnqueuedAt(), lane);
+        ackAggregator.delivered(channel, deliveryTag);
+        CompletableFuture<Void> result;
 
         try {
             log.info("Processing image: {}", message.getKey());
 
-            tempDir = Files.createTempDirectory("image-processing");
-            originalFile = tempDir.resolve("original" + StorageUtil.getExtension(message.getKey()));
-            thumbnailFile = tempDir.resolve("thumbnail" + StorageUtil.getExtension(message.getKey()));
-
             // Only process if message matches our storage type
             if (message.getStorageType().equals(getStorageType())) {
-                // Download original file
-                downloadOriginal(message.getKey(), originalFile);
+                String thumbnailKey = StorageUtil.getThumbnailKey(message.getKey());
 
-                // Generate thumbnail
-                generateThumbnail(originalFile, thumbnailFile);
+                // Download, generate and upload the thumbnail and renditions
+                List<ImageRendition> renditions;
+                if (message.getSize() > 0 && message.getSize() <= streamingMaxSize) {
+                    renditions = processInMemory(message, thumbnailKey, lane);
+                } else {
+                    renditions = processWithTempFiles(message, thumbnailKey, lane,
+                        file -> downloadOriginal(message.getKey(), file));
+                }
 
-                // Upload thumbnail
-                String thumbnailKey = StorageUtil.getThumbnailKey(message.getKey());
-                uploadThumbnail(thumbnailFile, thumbnailKey, message.getContentType());
+                // The metadata update is written behind; the message is only acked once it has been committed
+                long metadataStart = System.nanoTime();
+                result = recordMetadata(message.getKey(), thumbnailKey, renditions)
+                    .thenRun(() -> {
+                        processingMetrics.recordStage(Stage.METADATA, System.nanoTime() - metadataStart);
 
-                log.info("Successfully processed image: {}", message.getKey());
+                        // Let open galleries know the thumbnail is available
+                        thumbnailEventPublisher.publishThumbnailReady(
+                            message.getKey(), thumbnailKey, generateUrl(thumbnailKey), getStorageType());
 
-                // Mark processing as successful
-                processingSuccess = true;
+                        log.info("Successfully processed image: {}", message.getKey());
+                    });
             } else {
                 log.debug("Skipping message with storage type: {} (we handle {})",
                     message.getStorageType(), getStorageType());
                 // This is not an error, just not for this service, so we can acknowledge
-                processingSuccess = true;
+                processingMetrics.recordOutcome(Outcome.SKIP);
+                result = CompletableFuture.completedFuture(null);
             }
         } catch (Exception e) {
-            log.error("Failed to process image: " + message.getKey(), e);
-        } finally {
-            try {
-                // Cleanup temporary files
-                if (originalFile != null) {
-                    Files.deleteIfExists(originalFile);
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        boolean skipped = !getStorageType().equals(message.getStorageType());
+        result.whenComplete((ignored, error) -> acknowledge(message, amqpMessage, channel, deliveryTag, error, job, skipped));
+    }
+
+    private void acknowledge(ImageProcessingMessage message, Message amqpMessage, Channel channel, long deliveryTag,
+                             Throwable error, ProcessingMetrics.Job job, boolean skipped) {
+        boolean processingSuccess = error == null;
+        if (!processingSuccess) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            log.error("Failed to process image: " + message.getKey(), cause);
+        }
+
+        try {
+            if (processingSuccess) {
+                // Acknowledge the message if processing was successful, batched with other completed messages
+                ackAggregator.ack(channel, deliveryTag);
+                if (!skipped) {
+                    processingMetrics.recordOutcome(Outcome.SUCCESS);
                 }
-                if (thumbnailFile != null) {
-                    Files.deleteIfExists(thumbnailFile);
+                log.debug("Message acknowledged for: {}", message.getKey());
+            } else {
+                // Move the message to the retry tier for its attempt, or park it once it is out of attempts
+                retryLadder.retryOrPark(amqpMessage, channel, deliveryTag, job.lane());
+                log.debug("Message sent for delayed retry: {}", message.getKey());
+            }
+        } catch (IOException e) {
+            log.error("Error handling RabbitMQ acknowledgment for: {}", message.getKey(), e);
+        }
+        processingMetrics.finish(job, processingSuccess);
+    }
+
+    protected abstract String generateUrl(String key);
+
+    /**
+     * Record the thumbnail and renditions of the original stored under the given key.
+     * The returned future completes once the update is durable.
+     */
+    protected abstract CompletableFuture<Void> recordMetadata(String key, String thumbnailKey,
+                                                              List<ImageRendition> renditions);
+
+    /**
+     * Download into a pooled buffer, decode and encode in memory, and upload the encoded images from pooled buffers.
+     * Download and upload run on the listener thread, decode/resize/encode on the CPU stage pool.
+     *
+     * An original that turns out larger than the in-memory limit continues through a temporary file, starting
+     * with the bytes already downloaded.
+     */
+    private List<ImageRendition> processInMemory(ImageProcessingMessage message, String thumbnailKey,
+                                                 ProcessingLane lane) throws Exception {
+        ByteBufferPool.PooledBuffer original = originalBufferPool.acquire();
+        List<EncodedImage> encoded = new ArrayList<>();
+        try {
+            long downloadStart = System.nanoTime();
+            try (InputStream input = openOriginal(message.getKey())) {
+                if (!copyAtMost(input, original, streamingMaxSize)) {
+                    log.info("Original {} is larger than its declared {} bytes, continuing through a temporary file",
+                            message.getKey(), message.getSize());
+                    return processWithTempFiles(message, thumbnailKey, lane, file -> {
+                        try (OutputStream output = Files.newOutputStream(file)) {
+                            original.writeTo(output);
+                            input.transferTo(output);
+                        }
+                    });
                 }
-                if (tempDir != null) {
-                    Files.deleteIfExists(tempDir);
+            }
+            processingMetrics.recordStage(Stage.DOWNLOAD, System.nanoTime() - downloadStart);
+
+            long submitted = System.nanoTime();
+            cpuStageExecutor.execute(lane, () -> {
+                processingMetrics.recordStage(Stage.CPU_QUEUE, System.nanoTime() - submitted);
+                try (ImageInputStream input = original.toImageInputStream()) {
+                    renderAll(input, message, thumbnailKey, encoded);
                 }
+                return null;
+            });
 
-                if (processingSuccess) {
-                    // Acknowledge the message if processing was successful
-                    channel.basicAck(deliveryTag, false);
-                    log.debug("Message acknowledged for: {}", message.getKey());
-                } else {
-                    // Reject the message with requeue=false to trigger dead letter exchange
-                    // This will route the message to the retry queue with delay
-                    channel.basicNack(deliveryTag, false, false);
-                    log.debug("Message rejected and sent to dead letter exchange for delayed retry: {}", message.getKey());
+            return timedUploadAll(encoded);
+        } finally {
+            originalBufferPool.release(original);
+            encoded.forEach(image -> thumbnailBufferPool.release(image.buffer()));
+        }
+    }
+
+    /**
+     * Copy the input to the output until it ends, or until more than limit bytes have been copied.
+     * Returns false in the latter case, with at most one more chunk than the limit copied.
+     */
+    private static boolean copyAtMost(InputStream input, OutputStream output, long limit) throws IOException {
+        byte[] chunk = new byte[64 * 1024];
+        long copied = 0;
+        int read;
+        while ((read = input.read(chunk)) >= 0) {
+            output.write(chunk, 0, read);
+            copied += read;
+            if (copied > limit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Process large originals through a temporary file so they are never held in memory as a whole
+     */
+    private List<ImageRendition> processWithTempFiles(ImageProcessingMessage message, String thumbnailKey,
+                                                      ProcessingLane lane, OriginalDownload download) throws Exception {
+        Path tempDir = null;
+        Path originalFile = null;
+        List<EncodedImage> encoded = new ArrayList<>();
+
+        try {
+            tempDir = Files.createTempDirectory("image-processing");
+            originalFile = tempDir.resolve("original" + StorageUtil.getExtension(message.getKey()));
+
+            // Download original file
+            long downloadStart = System.nanoTime();
+            download.to(originalFile);
+            processingMetrics.recordStage(Stage.DOWNLOAD, System.nanoTime() - downloadStart);
+
+            // Generate thumbnail and renditions
+            Path input = originalFile;
+            long submitted = System.nanoTime();
+            cpuStageExecutor.execute(lane, () -> {
+                processingMetrics.recordStage(Stage.CPU_QUEUE, System.nanoTime() - submitted);
+                try (ImageInputStream stream = ImageIO.createImageInputStream(input.toFile())) {
+                    renderAll(stream, message, thumbnailKey, encoded);
                 }
-            } catch (IOException e) {
-                log.error("Error handling RabbitMQ acknowledgment for: {}", message.getKey(), e);
+                return null;
+            });
+
+            // Upload thumbnail and renditions
+            return timedUploadAll(encoded);
+        } finally {
+            // Cleanup temporary files
+            if (originalFile != null) {
+                Files.deleteIfExists(originalFile);
+            }
+            if (tempDir != null) {
+                Files.deleteIfExists(tempDir);
             }
+            encoded.forEach(image -> thumbnailBufferPool.release(image.buffer()));
         }
     }
-    
-    protected abstract String generateUrl(String key);
 
-    protected void generateThumbnail(Path input, Path output) throws IOException {
-        log.info("Generating thumbnail for: {}", input);
+    /**
+     * Decode the original once and encode the thumbnail and every rendition from a single resize cascade.
+     * The decoded and resized images are pooled by the CPU thread and recycled once all are encoded.
+     */
+    private void renderAll(ImageInputStream input, ImageProcessingMessage message, String thumbnailKey,
+                           List<EncodedImage> encoded) throws IOException {
+        try {
+            render(input, message, thumbnailKey, encoded);
+        } finally {
+            rasterPool.recycle();
+        }
+    }
 
-        // Read the original image
-        BufferedImage originalImage = ImageIO.read(input.toFile());
+    private void render(ImageInputStream input, ImageProcessingMessage message, String thumbnailKey,
+                        List<EncodedImage> encoded) throws IOException {
+        log.info("Generating thumbnail and renditions for: {}", message.getKey());
+
+        // Read the original image, subsampled to what the largest output needs
+        long decodeStart = System.nanoTime();
+        BufferedImage originalImage = imageDecoder.decode(input, Math.max(MAX_DIMENSION, renditionSet.getLargestSize()));
+        processingMetrics.recordStage(Stage.DECODE, System.nanoTime() - decodeStart);
         if (originalImage == null) {
-            throw new IOException("Could not read image file: " + input);
+            throw new IOException("Could not read image file: " + message.getKey());
         }
 
-        int originalWidth = originalImage.getWidth();
-        int originalHeight = originalImage.getHeight();
-
-        // Calculate thumbnail dimensions while preserving aspect ratio
-        // Increased size significantly for better clarity (600px max dimension)
-        int maxDimension = 600;
-        int thumbnailWidth, thumbnailHeight;
-        
-        double aspectRatio = (double) originalWidth / originalHeight;
-
-        if (originalWidth > originalHeight) {
-            thumbnailWidth = maxDimension;
-            thumbnailHeight = (int) (maxDimension / aspectRatio);
-        } else {
-            thumbnailHeight = maxDimension;
-            thumbnailWidth = (int) (maxDimension * aspectRatio);
+        int[] sizes = renditionSet.isEmpty() ? new int[0] : renditionSet.getSizes();
+        int[] maxDimensions = Arrays.copyOf(sizes, sizes.length + 1);
+        maxDimensions[sizes.length] = MAX_DIMENSION;
+        long resizeStart = System.nanoTime();
+        Map<Integer, BufferedImage> resized = RenditionSet.cascade(originalImage, thumbnailEngine, maxDimensions);
+        processingMetrics.recordStage(Stage.RESIZE, System.nanoTime() - resizeStart);
+
+        // The thumbnail keeps the format of the original
+        long encodeStart = System.nanoTime();
+        encode(resized.get(MAX_DIMENSION), thumbnailKey, getFormat(thumbnailKey), message.getContentType(), false, encoded);
+
+        // Small originals are not scaled up, so several sizes can produce the same rendition
+        Set<String> renditionKeys = new HashSet<>();
+        for (int size : sizes) {
+            BufferedImage image = resized.get(size);
+            for (String format : renditionSet.getFormats()) {
+                String key = StorageUtil.getRenditionKey(message.getKey(), image.getWidth(), image.getHeight(), format);
+                if (renditionKeys.add(key)) {
+                    encode(image, key, format, RenditionSet.contentType(format), true, encoded);
+                }
+            }
         }
 
-        // Multi-step scaling for higher quality
-        // This progressive scaling produces better results than single-step scaling
-        BufferedImage resultImage = progressiveScaling(originalImage, thumbnailWidth, thumbnailHeight);
+        processingMetrics.recordStage(Stage.ENCODE, System.nanoTime() - encodeStart);
 
-        // Sharpen the image to enhance details
-        resultImage = sharpenImage(resultImage);
+        log.info("Generated {} images for: {}", encoded.size(), message.getKey());
+    }
 
-        // Determine the output format based on the file extension
-        String extension = StorageUtil.getExtension(output.toString());
-        if (extension.startsWith(".")) {
-            extension = extension.substring(1);
-        }
-        if (extension.isEmpty()) {
-            extension = "jpg"; // Default to jpg if no extension found
+    private void encode(BufferedImage image, String key, String format, String contentType, boolean rendition,
+                        List<EncodedImage> encoded) throws IOException {
+        ByteBufferPool.PooledBuffer buffer = thumbnailBufferPool.acquire();
+        // Added before writing, so the buffer is released by the caller even if encoding fails
+        encoded.add(new EncodedImage(key, contentType, format, image.getWidth(), image.getHeight(), rendition, buffer));
+        try (ImageOutputStream output = buffer.toImageOutputStream()) {
+            imageEncoder.write(image, format, output);
         }
+    }
 
-        // Write the thumbnail with optimized settings for different formats
-        if (extension.equalsIgnoreCase("jpg") || extension.equalsIgnoreCase("jpeg")) {
-            // For JPEG, we need to set compression quality
-            javax.imageio.ImageWriter jpgWriter = javax.imageio.ImageIO.getImageWritersByFormatName("jpg").next();
-            javax.imageio.ImageWriteParam jpgWriteParam = jpgWriter.getDefaultWriteParam();
-            jpgWriteParam.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-            // Higher compression quality (0.95 for maximum clarity)
-            jpgWriteParam.setCompressionQuality(0.95f);
-            
-            javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-            javax.imageio.stream.ImageOutputStream outputStream = 
-                javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-            jpgWriter.setOutput(outputStream);
-            jpgWriter.write(null, outputImage, jpgWriteParam);
-            jpgWriter.dispose();
-            outputStream.close();
-        } else {
-            // For PNG, use compression level 0 (no compression) for best quality
-            javax.imageio.ImageWriteParam pngWriteParam = null;
-            if (extension.equalsIgnoreCase("png")) {
-                javax.imageio.ImageWriter pngWriter = ImageIO.getImageWritersByFormatName("png").next();
-                pngWriteParam = pngWriter.getDefaultWriteParam();
-                if (pngWriteParam.canWriteCompressed()) {
-                    pngWriteParam.setCompressionMode(javax.imageio.ImageWriteParam.MODE_EXPLICIT);
-                    pngWriteParam.setCompressionType("Deflate");
-                    pngWriteParam.setCompressionQuality(0.0f); // 0 = best quality for PNG
-                    
-                    javax.imageio.IIOImage outputImage = new javax.imageio.IIOImage(resultImage, null, null);
-                    javax.imageio.stream.ImageOutputStream outputStream = 
-                        javax.imageio.ImageIO.createImageOutputStream(output.toFile());
-                    pngWriter.setOutput(outputStream);
-                    pngWriter.write(null, outputImage, pngWriteParam);
-                    pngWriter.dispose();
-                    outputStream.close();
-                } else {
-                    ImageIO.write(resultImage, extension, output.toFile());
-                }
+    private List<ImageRendition> timedUploadAll(List<EncodedImage> encoded) throws Exception {
+        long uploadStart = System.nanoTime();
+        List<ImageRendition> renditions = uploadAll(encoded);
+        processingMetrics.recordStage(Stage.UPLOAD, System.nanoTime() - uploadStart);
+        return renditions;
+    }
+
+    private List<ImageRendition> uploadAll(List<EncodedImage> encoded) throws Exception {
+        List<ImageRendition> renditions = new ArrayList<>();
+        for (EncodedImage image : encoded) {
+            ByteBufferPool.PooledBuffer buffer = image.buffer();
+            if (image.rendition()) {
+                uploadRendition(buffer.toInputStream(), buffer.size(), image.key(), image.contentType());
+                renditions.add(new ImageRendition(image.key(), generateUrl(image.key()), image.format(),
+                        image.width(), image.height(), buffer.size()));
             } else {
-                // For other formats, use regular write method
-                ImageIO.write(resultImage, extension, output.toFile());
+                uploadThumbnail(buffer.toInputStream(), buffer.size(), image.key(), image.contentType());
             }
         }
-
-        log.info("Successfully generated thumbnail: {}", output);
+        return renditions;
     }
-    
+
     /**
-     * Performs progressive scaling of the image for better quality.
-     * This method gradually scales down the image in multiple steps rather than all at once.
+     * Determine the output format based on the file extension
      */
-    private BufferedImage progressiveScaling(BufferedImage source, int targetWidth, int targetHeight) {
-        // Current dimensions
-        int currentWidth = source.getWidth();
-        int currentHeight = source.getHeight();
-        
-        // Don't scale up images that are already smaller than target size
-        if (currentWidth <= targetWidth && currentHeight <= targetHeight) {
-            return source;
-        }
-        
-        // Use a multi-step approach for higher quality
-        BufferedImage result = source;
-        
-        // Scale down in multiple steps for better quality (not more than 50% each step)
-        while (currentWidth > targetWidth * 1.5 || currentHeight > targetHeight * 1.5) {
-            int newWidth = Math.max(currentWidth / 2, targetWidth);
-            int newHeight = Math.max(currentHeight / 2, targetHeight);
-            
-            result = scaleImage(result, newWidth, newHeight);
-            
-            currentWidth = newWidth;
-            currentHeight = newHeight;
+    private String getFormat(String name) {
+        String extension = StorageUtil.getExtension(name);
+        if (extension.startsWith(".")) {
+            extension = extension.substring(1);
         }
-        
-        // Final scaling to exact target dimensions
-        if (currentWidth != targetWidth || currentHeight != targetHeight) {
-            result = scaleImage(result, targetWidth, targetHeight);
+        if (extension.isEmpty()) {
+            extension = "jpg"; // Default to jpg if no extension found
         }
-        
-        return result;
+        return extension;
     }
-    
+
     /**
-     * Scale an image to specific dimensions using high quality settings.
+     * Writes the original to a temporary file
      */
-    private BufferedImage scaleImage(BufferedImage source, int width, int height) {
-        // Create a new BufferedImage for the result
-        BufferedImage result;
-        
-        // Preserve transparency for images with alpha channel
-        if (source.getTransparency() != BufferedImage.OPAQUE) {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-        } else {
-            result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        }
-        
-        // Set up the rendering process with maximum quality settings
-        Graphics2D g2d = result.createGraphics();
-        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-        g2d.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-        g2d.setRenderingHint(RenderingHints.KEY_COLOR_RENDERING, RenderingHints.VALUE_COLOR_RENDER_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_DITHERING, RenderingHints.VALUE_DITHER_ENABLE);
-        g2d.setRenderingHint(RenderingHints.KEY_ALPHA_INTERPOLATION, RenderingHints.VALUE_ALPHA_INTERPOLATION_QUALITY);
-        g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-        
-        // Draw the scaled image
-        g2d.drawImage(source, 0, 0, width, height, null);
-        g2d.dispose();
-        
-        return result;
+    @FunctionalInterface
+    private interface OriginalDownload {
+        void to(Path file) throws Exception;
     }
-    
+
     /**
-     * Apply a sharpening filter to enhance image clarity
+     * An encoded image waiting to be uploaded, backed by a pooled buffer
      */
-    private BufferedImage sharpenImage(BufferedImage image) {
-        float[] sharpenMatrix = {
-            0, -0.2f, 0,
-            -0.2f, 1.8f, -0.2f,
-            0, -0.2f, 0
-        };
-        
-        java.awt.image.Kernel kernel = new java.awt.image.Kernel(3, 3, sharpenMatrix);
-        java.awt.image.ConvolveOp convolveOp = new java.awt.image.ConvolveOp(
-            kernel, java.awt.image.ConvolveOp.EDGE_NO_OP, null);
-        
-        // Create a compatible destination image to avoid potential issues with some image types
-        BufferedImage output;
-        if (image.getTransparency() != BufferedImage.OPAQUE) {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_ARGB);
-        } else {
-            output = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB); 
-        }
-        
-        // Apply the filter
-        return convolveOp.filter(image, output);
+    private record EncodedImage(String key, String contentType, String format, int width, int height,
+                                boolean rendition, ByteBufferPool.PooledBuffer buffer) {
     }
 }
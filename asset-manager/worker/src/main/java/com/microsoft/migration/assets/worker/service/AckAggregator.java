@@ -0,0 +1,171 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Aggregates manual acknowledgements into multi-message acks.
+ *
+ * Delivery tags are registered per channel in delivery order. Completed messages are acked with a single
+ * {@code basicAck(tag, multiple = true)} for the highest tag below which every message has been settled, once
+ * enough acks are pending on the channel or on a fixed interval. Failures are nacked on their own right away,
+ * so they reach the retry dead letter exchange without waiting for a batch.
+ *
+ * Messages waiting for a batched ack still count against the channel's prefetch, so the prefetch count should
+ * be comfortably larger than the batch size.
+ */
+@Slf4j
+@Component
+public class AckAggregator {
+
+    private final Map<Channel, ChannelAcks> channels = new ConcurrentHashMap<>();
+    private final int batchSize;
+    private final Counter ackRoundTrips;
+    private final Counter nackRoundTrips;
+    private final Counter ackedMessages;
+
+    public AckAggregator(MeterRegistry registry, @Value("${worker.ack.batch-size:5}") int batchSize) {
+        this.batchSize = Math.max(batchSize, 1);
+        this.ackRoundTrips = Counter.builder("worker.ack.round.trips")
+                .description("Acknowledgement frames sent to the broker")
+                .tag("type", "ack")
+                .register(registry);
+        this.nackRoundTrips = Counter.builder("worker.ack.round.trips")
+                .description("Acknowledgement frames sent to the broker")
+                .tag("type", "nack")
+                .register(registry);
+        this.ackedMessages = Counter.builder("worker.ack.messages")
+                .description("Messages acknowledged, through single or multi-message acks")
+                .register(registry);
+    }
+
+    /**
+     * Register a delivery before processing starts; must be called in delivery order for each channel
+     */
+    public void delivered(Channel channel, long deliveryTag) {
+        ChannelAcks acks = channels.computeIfAbsent(channel, ChannelAcks::new);
+        acks.lock.lock();
+        try {
+            acks.settled.put(deliveryTag, Settlement.PENDING);
+        } finally {
+            acks.lock.unlock();
+        }
+    }
+
+    /**
+     * Mark a delivery as successfully processed; the ack is sent with the channel's next batch
+     */
+    public void ack(Channel channel, long deliveryTag) {
+        ChannelAcks acks = channels.computeIfAbsent(channel, ChannelAcks::new);
+        acks.lock.lock();
+        try {
+            acks.settled.put(deliveryTag, Settlement.ACKED);
+            acks.pendingAcks++;
+            if (acks.pendingAcks >= batchSize) {
+                flush(acks);
+            }
+        } finally {
+            acks.lock.unlock();
+        }
+    }
+
+    /**
+     * Reject a delivery without requeueing, so it is dead-lettered to the retry queue
+     */
+    public void nack(Channel channel, long deliveryTag) throws IOException {
+        ChannelAcks acks = channels.computeIfAbsent(channel, ChannelAcks::new);
+        acks.lock.lock();
+        try {
+            channel.basicNack(deliveryTag, false, false);
+            nackRoundTrips.increment();
+            acks.settled.put(deliveryTag, Settlement.NACKED);
+            // The nack may close a gap that held back earlier acks
+            if (acks.pendingAcks >= batchSize) {
+                flush(acks);
+            }
+        } finally {
+            acks.lock.unlock();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${worker.ack.flush-interval-ms:100}")
+    public void flush() {
+        for (ChannelAcks acks : channels.values()) {
+            acks.lock.lock();
+            try {
+                if (!acks.channel.isOpen()) {
+                    // Unacked deliveries of a closed channel are redelivered by the broker
+                    channels.remove(acks.channel);
+                    continue;
+                }
+                if (acks.pendingAcks > 0) {
+                    flush(acks);
+                }
+            } finally {
+                acks.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Ack everything up to the highest acked tag below the first delivery that is still in progress
+     */
+    private void flush(ChannelAcks acks) {
+        long highestAcked = -1;
+        int covered = 0;
+        Iterator<Map.Entry<Long, Settlement>> settled = acks.settled.entrySet().iterator();
+        while (settled.hasNext()) {
+            Map.Entry<Long, Settlement> entry = settled.next();
+            if (entry.getValue() == Settlement.PENDING) {
+                break;
+            }
+            if (entry.getValue() == Settlement.ACKED) {
+                // A multiple ack must name a tag that is still unacknowledged, never an already nacked one
+                highestAcked = entry.getKey();
+                covered++;
+            }
+            settled.remove();
+        }
+        if (highestAcked < 0) {
+            return;
+        }
+
+        try {
+            acks.channel.basicAck(highestAcked, true);
+            ackRoundTrips.increment();
+            ackedMessages.increment(covered);
+            log.debug("Acknowledged {} messages up to delivery tag {}", covered, highestAcked);
+        } catch (IOException e) {
+            // The channel is going away; its unacked deliveries will be redelivered
+            log.error("Error acknowledging messages up to delivery tag {}", highestAcked, e);
+        }
+        acks.pendingAcks -= covered;
+    }
+
+    private enum Settlement {
+        PENDING, ACKED, NACKED
+    }
+
+    private static final class ChannelAcks {
+        private final Channel channel;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final TreeMap<Long, Settlement> settled = new TreeMap<>();
+        private int pendingAcks;
+
+        ChannelAcks(Channel channel) {
+            this.channel = channel;
+        }
+    }
+}
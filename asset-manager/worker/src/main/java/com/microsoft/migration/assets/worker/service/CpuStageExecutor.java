@@ -0,0 +1,141 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed pool for the CPU-bound decode/resize/encode stage, sized to the cores.
+ *
+ * Listener threads do the I/O-bound download and upload and hand the CPU work over here. At most
+ * threads + queue capacity jobs are admitted at once; further callers block until a slot frees up,
+ * so the hand-off never queues more decoded images than the pool can work through.
+ *
+ * Jobs of the interactive lane are taken before queued bulk jobs, and bulk jobs are admitted on at most
+ * their share of the threads, so the rest of the pool is always free for interactive work during a backfill.
+ * A running job is never preempted.
+ */
+@Slf4j
+@Component
+public class CpuStageExecutor implements DisposableBean {
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final Semaphore bulkSlots;
+    private final int threads;
+    private final int permits;
+    private final int bulkPermits;
+    // Keeps jobs of the same lane in submission order
+    private final AtomicLong sequence = new AtomicLong();
+
+    public CpuStageExecutor(@Value("${worker.processing.cpu-threads:0}") int threads,
+                            @Value("${worker.processing.cpu-queue-capacity:0}") int queueCapacity,
+                            @Value("${worker.lanes.bulk.cpu-share:0.5}") double bulkCpuShare) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        int capacity = queueCapacity > 0 ? queueCapacity : this.threads;
+        this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                Thread.ofPlatform().name("thumbnail-cpu-", 0).daemon(true).factory());
+        this.permits = this.threads + capacity;
+        this.slots = new Semaphore(permits, true);
+        this.bulkPermits = Math.max((int) (this.threads * bulkCpuShare), 1);
+        this.bulkSlots = new Semaphore(bulkPermits, true);
+        log.info("CPU stage pool: {} threads, {} queued jobs, {} bulk jobs", this.threads, capacity, bulkPermits);
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Jobs currently running or waiting in the hand-off
+     */
+    public int getAdmitted() {
+        return permits - slots.availablePermits();
+    }
+
+    /**
+     * Jobs of the bulk lane currently running or waiting in the hand-off
+     */
+    public int getAdmittedBulk() {
+        return bulkPermits - bulkSlots.availablePermits();
+    }
+
+    /**
+     * Jobs handed off and waiting for a thread
+     */
+    int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Run the task on the CPU pool and wait for its result, blocking first if the hand-off, or for the
+     * bulk lane its share of the pool, is full
+     */
+    public <T> T execute(ProcessingLane lane, Callable<T> task) throws Exception {
+        boolean bulk = lane == ProcessingLane.BULK;
+        if (bulk) {
+            bulkSlots.acquire();
+        }
+        try {
+            slots.acquire();
+            try {
+                LaneTask<T> future = new LaneTask<>(task, lane, sequence.getAndIncrement());
+                executor.execute(future);
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    future.cancel(true);
+                    throw e;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Exception cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+            } finally {
+                slots.release();
+            }
+        } finally {
+            if (bulk) {
+                bulkSlots.release();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A job ordered by lane, then by submission
+     */
+    private static final class LaneTask<T> extends FutureTask<T> implements Comparable<LaneTask<?>> {
+        private final ProcessingLane lane;
+        private final long sequence;
+
+        LaneTask(Callable<T> task, ProcessingLane lane, long sequence) {
+            super(task);
+            this.lane = lane;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(LaneTask<?> other) {
+            int byLane = lane.compareTo(other.lane);
+            return byLane != 0 ? byLane : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,9 +1,18 @@
 package com.microsoft.migration.assets.worker.service;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 
 public interface FileProcessor {
     void downloadOriginal(String key, Path destination) throws Exception;
     void uploadThumbnail(Path source, String key, String contentType) throws Exception;
+
+    // Stream-based variants used to process images without temporary files
+    InputStream openOriginal(String key) throws Exception;
+    void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception;
+
+    // Renditions are stored under their own keys and do not change the image's thumbnail
+    void uploadRendition(InputStream source, long length, String key, String contentType) throws Exception;
+
     String getStorageType();
-}
\ No newline at end of file
+}
@@ -1,13 +1,17 @@
 package com.microsoft.migration.assets.worker.service;
 
+import com.microsoft.migration.assets.worker.model.ImageRendition;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Service;
 import jakarta.annotation.PostConstruct;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -49,6 +53,34 @@ public class LocalFileProcessingService extends AbstractFileProcessingService {
         Files.copy(source, destinationPath, StandardCopyOption.REPLACE_EXISTING);
     }
 
+    @Override
+    public InputStream openOriginal(String key) throws Exception {
+        Path sourcePath = rootLocation.resolve(key);
+        if (!Files.exists(sourcePath)) {
+            throw new java.io.FileNotFoundException("File not found: " + sourcePath);
+        }
+        return Files.newInputStream(sourcePath);
+    }
+
+    @Override
+    public void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception {
+        Path destinationPath = rootLocation.resolve(key);
+        Files.createDirectories(destinationPath.getParent());
+        Files.copy(source, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void uploadRendition(InputStream source, long length, String key, String contentType) throws Exception {
+        uploadThumbnail(source, length, key, contentType);
+    }
+
+    @Override
+    protected CompletableFuture<Void> recordMetadata(String key, String thumbnailKey, List<ImageRendition> renditions) {
+        // Local storage keeps no metadata, the web module finds thumbnails and renditions by their keys
+        logger.debug("Stored thumbnail and {} renditions for {}", renditions.size(), key);
+        return CompletableFuture.completedFuture(null);
+    }
+
     @Override
     public String getStorageType() {
         return "local";
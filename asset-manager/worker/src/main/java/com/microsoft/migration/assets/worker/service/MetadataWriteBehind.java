@@ -0,0 +1,193 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ImageRendition;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer for the metadata updates of processed images.
+ *
+ * Updates are coalesced by key and written as JDBC batch statements in a single transaction, flushed when
+ * the batch is full or on a fixed interval, whichever comes first. The future returned by {@link #submit}
+ * completes once the batch holding the update has been committed, so callers can defer message acks until
+ * the update is durable. Flushes run one at a time, so batches are committed in the order they were taken
+ * and a newer update for a key never commits before an older one.
+ *
+ * The futures are completed on a small pool of their own once the flush has finished, so the callbacks chained
+ * to them, such as acks or moving a failed message to its retry tier, never hold up the next flush or run on
+ * the scheduler or listener thread that happened to flush.
+ */
+@Slf4j
+@Component
+public class MetadataWriteBehind implements DisposableBean {
+
+    // Column names as generated by Hibernate's naming strategy, which puts no underscore after a digit: s3Key is s3key
+    private static final String UPDATE_THUMBNAIL_SQL =
+            "UPDATE image_metadata SET thumbnail_key = ?, thumbnail_url = ?, last_modified = ? WHERE s3key = ?";
+    private static final String DELETE_RENDITIONS_SQL =
+            "DELETE FROM image_rendition WHERE image_metadata_id IN (SELECT id FROM image_metadata WHERE s3key = ?)";
+    private static final String INSERT_RENDITION_SQL =
+            "INSERT INTO image_rendition (image_metadata_id, s3key, s3url, format, width, height, size) "
+                    + "SELECT id, ?, ?, ?, ?, ?, ? FROM image_metadata WHERE s3key = ?";
+
+    /**
+     * Thumbnail and renditions of one processed image
+     */
+    public record MetadataUpdate(String s3Key, String thumbnailKey, String thumbnailUrl, List<ImageRendition> renditions) {
+    }
+
+    private record Pending(MetadataUpdate update, List<CompletableFuture<Void>> waiters) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final DistributionSummary batchSizes;
+    private final Timer flushTimer;
+    private final ExecutorService completions;
+
+    // A lock rather than synchronized, so listeners on virtual threads don't pin their carrier while waiting
+    private final ReentrantLock lock = new ReentrantLock();
+    // Held from taking a batch to committing it, by the scheduler or a full batch
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private Map<String, Pending> pending = new LinkedHashMap<>();
+
+    public MetadataWriteBehind(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               MeterRegistry registry,
+                               @Value("${worker.metadata.batch-size:200}") int batchSize,
+                               @Value("${worker.metadata.completion-threads:4}") int completionThreads) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.batchSizes = DistributionSummary.builder("worker.metadata.batch.size")
+                .description("Metadata updates written per batch")
+                .register(registry);
+        this.flushTimer = Timer.builder("worker.metadata.flush")
+                .description("Time to write and commit a batch of metadata updates")
+                .register(registry);
+        this.completions = Executors.newFixedThreadPool(Math.max(completionThreads, 1),
+                Thread.ofPlatform().name("metadata-commit-", 0).daemon(true).factory());
+    }
+
+    /**
+     * Queue an update; the returned future completes when the batch holding it has been committed
+     */
+    public CompletableFuture<Void> submit(MetadataUpdate update) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        boolean full;
+        lock.lock();
+        try {
+            // A newer update for the same image replaces the queued one, both messages wait for the same commit
+            Pending previous = pending.remove(update.s3Key());
+            List<CompletableFuture<Void>> waiters = previous != null ? previous.waiters() : new ArrayList<>();
+            waiters.add(future);
+            pending.put(update.s3Key(), new Pending(update, waiters));
+            full = pending.size() >= batchSize;
+        } finally {
+            lock.unlock();
+        }
+
+        if (full) {
+            flush();
+        }
+        return future;
+    }
+
+    @Scheduled(fixedDelayString = "${worker.metadata.flush-interval-ms:200}")
+    public void flush() {
+        Map<String, Pending> batch;
+        RuntimeException failure = null;
+        flushLock.lock();
+        try {
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> write(batch.values())));
+                batchSizes.record(batch.size());
+                log.debug("Committed {} metadata updates", batch.size());
+            } catch (RuntimeException e) {
+                log.error("Failed to write {} metadata updates", batch.size(), e);
+                failure = e;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+
+        // Each waiter on its own task, so one slow callback doesn't delay the others
+        for (Pending entry : batch.values()) {
+            for (CompletableFuture<Void> waiter : entry.waiters()) {
+                if (failure == null) {
+                    waiter.completeAsync(() -> null, completions);
+                } else {
+                    RuntimeException error = failure;
+                    completions.execute(() -> waiter.completeExceptionally(error));
+                }
+            }
+        }
+    }
+
+    private void write(Iterable<Pending> batch) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> thumbnails = new ArrayList<>();
+        List<Object[]> keys = new ArrayList<>();
+        List<Object[]> renditions = new ArrayList<>();
+        for (Pending entry : batch) {
+            MetadataUpdate update = entry.update();
+            thumbnails.add(new Object[] {update.thumbnailKey(), update.thumbnailUrl(), now, update.s3Key()});
+            keys.add(new Object[] {update.s3Key()});
+            for (ImageRendition rendition : update.renditions()) {
+                renditions.add(new Object[] {rendition.getS3Key(), rendition.getS3Url(), rendition.getFormat(),
+                        rendition.getWidth(), rendition.getHeight(), rendition.getSize(), update.s3Key()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_THUMBNAIL_SQL, thumbnails);
+        // Renditions are replaced as a whole, as a reprocessed image may produce a different set
+        jdbcTemplate.batchUpdate(DELETE_RENDITIONS_SQL, keys);
+        if (!renditions.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_RENDITION_SQL, renditions);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        // Write what is still queued; acks of channels that are already closed fail and the messages are redelivered
+        flush();
+        completions.shutdown();
+        try {
+            completions.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
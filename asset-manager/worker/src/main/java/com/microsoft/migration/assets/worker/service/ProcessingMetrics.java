@@ -0,0 +1,206 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of the processing pipeline, to find where the time goes under load.
+ *
+ * Every meter is tagged with the active execution mode, so platform-thread and virtual-thread runs can be
+ * compared side by side: per-message latency, messages and bytes in flight, CPU stage occupancy and the
+ * number of platform threads (carriers included, virtual threads are not counted). In virtual-thread mode,
+ * pinned carrier threads are recorded from the JDK's {@code jdk.VirtualThreadPinned} flight recorder events.
+ *
+ * Each pipeline stage has its own timer with a percentile histogram, {@code worker.processing.stage} tagged
+ * with the stage. Message outcomes are counted in {@code worker.processing.messages}. Queue lag and end-to-end
+ * latency are measured from the enqueue time set by the web application, so they include any clock skew
+ * between the two hosts. They and the per-message latency are tagged with the processing lane as well, to
+ * check that interactive latency holds during a bulk backfill.
+ */
+@Slf4j
+@Component
+public class ProcessingMetrics implements DisposableBean {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    /**
+     * Pipeline stages, in processing order. Sharpening is part of resize: the separable engine folds it into
+     * the resampling weights, so it has no cost of its own to measure.
+     */
+    public enum Stage {
+        DOWNLOAD, CPU_QUEUE, DECODE, RESIZE, ENCODE, UPLOAD, METADATA;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    /**
+     * Outcome of a message: processed, skipped as it is for another storage type, sent to a retry tier,
+     * parked after its last attempt, or rejected because it could not be moved to a retry tier
+     */
+    public enum Outcome {
+        SUCCESS, SKIP, RETRY, PARKED, NACK;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * A message being processed, from {@link #start} to {@link #finish}
+     */
+    public record Job(Timer.Sample sample, long bytes, long enqueuedAt, ProcessingLane lane) {
+    }
+
+    private final MeterRegistry registry;
+    private final String mode;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong inFlightBytes = new AtomicLong();
+    private final Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+    private final Map<ProcessingLane, Timer> queueLag = new EnumMap<>(ProcessingLane.class);
+    private final Map<ProcessingLane, Timer> endToEnd = new EnumMap<>(ProcessingLane.class);
+    private final Timer pinned;
+    private RecordingStream pinnedEvents;
+
+    public ProcessingMetrics(MeterRegistry registry,
+                             CpuStageExecutor cpuStageExecutor,
+                             @Value("${worker.processing.virtual-threads:false}") boolean virtualThreads,
+                             @Value("${worker.processing.pinned-threshold-ms:20}") long pinnedThresholdMs) {
+        this.registry = registry;
+        this.mode = virtualThreads ? "virtual" : "platform";
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Gauge.builder("worker.processing.in.flight", inFlight, AtomicInteger::get)
+                .description("Messages currently being processed")
+                .tag("mode", mode)
+                .register(registry);
+        Gauge.builder("worker.processing.in.flight.bytes", inFlightBytes, AtomicLong::get)
+                .description("Size of the originals currently being processed")
+                .baseUnit("bytes")
+                .tag("mode", mode)
+                .register(registry);
+        Gauge.builder("worker.processing.platform.threads", threads, ThreadMXBean::getThreadCount)
+                .description("Live platform threads, including virtual thread carriers")
+                .tag("mode", mode)
+                .register(registry);
+        Gauge.builder("worker.processing.cpu.stage.admitted", cpuStageExecutor, CpuStageExecutor::getAdmitted)
+                .description("Jobs running or waiting on the CPU stage pool")
+                .tag("mode", mode)
+                .register(registry);
+        Gauge.builder("worker.processing.cpu.stage.admitted.bulk", cpuStageExecutor, CpuStageExecutor::getAdmittedBulk)
+                .description("Bulk lane jobs running or waiting on the CPU stage pool")
+                .tag("mode", mode)
+                .register(registry);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, Timer.builder("worker.processing.stage")
+                    .description("Time spent in one stage of processing a message")
+                    .tag("mode", mode)
+                    .tag("stage", stage.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("worker.processing.messages")
+                    .description("Messages handled, by outcome")
+                    .tag("mode", mode)
+                    .tag("outcome", outcome.tag())
+                    .register(registry));
+        }
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            queueLag.put(lane, Timer.builder("worker.processing.queue.lag")
+                    .description("Time from enqueueing a message to the start of its processing")
+                    .tag("mode", mode)
+                    .tag("lane", lane.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+            endToEnd.put(lane, Timer.builder("worker.processing.end.to.end")
+                    .description("Time from enqueueing a message to acking or rejecting it")
+                    .tag("mode", mode)
+                    .tag("lane", lane.tag())
+                    .publishPercentileHistogram()
+                    .register(registry));
+        }
+        this.pinned = Timer.builder("worker.processing.carrier.pinned")
+                .description("Time virtual threads kept their carrier thread pinned while blocked")
+                .tag("mode", mode)
+                .register(registry);
+
+        if (virtualThreads) {
+            startPinnedEvents(Duration.ofMillis(pinnedThresholdMs));
+        }
+    }
+
+    /**
+     * Mark the start of a message, to be passed to {@link #finish} once it has been acked or rejected
+     */
+    public Job start(long bytes, long enqueuedAt, ProcessingLane lane) {
+        inFlight.incrementAndGet();
+        inFlightBytes.addAndGet(bytes);
+        if (enqueuedAt > 0) {
+            queueLag.get(lane).record(Math.max(System.currentTimeMillis() - enqueuedAt, 0), TimeUnit.MILLISECONDS);
+        }
+        return new Job(Timer.start(registry), bytes, enqueuedAt, lane);
+    }
+
+    public void finish(Job job, boolean success) {
+        inFlight.decrementAndGet();
+        inFlightBytes.addAndGet(-job.bytes());
+        job.sample().stop(Timer.builder("worker.processing.latency")
+                .description("Time from receiving a message to acking or rejecting it")
+                .tag("mode", mode)
+                .tag("lane", job.lane().tag())
+                .tag("outcome", success ? "success" : "failure")
+                .register(registry));
+        if (job.enqueuedAt() > 0) {
+            endToEnd.get(job.lane()).record(Math.max(System.currentTimeMillis() - job.enqueuedAt(), 0), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordStage(Stage stage, long nanos) {
+        stages.get(stage).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordOutcome(Outcome outcome) {
+        outcomes.get(outcome).increment();
+    }
+
+    private void startPinnedEvents(Duration threshold) {
+        try {
+            pinnedEvents = new RecordingStream();
+            pinnedEvents.enable(PINNED_EVENT).withThreshold(threshold);
+            pinnedEvents.onEvent(PINNED_EVENT, event -> pinned.record(event.getDuration()));
+            pinnedEvents.startAsync();
+        } catch (Exception e) {
+            // The flight recorder may be unavailable; the other meters still work without it
+            log.warn("Could not record pinned virtual thread events", e);
+            pinnedEvents = null;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (pinnedEvents != null) {
+            pinnedEvents.close();
+        }
+    }
+}
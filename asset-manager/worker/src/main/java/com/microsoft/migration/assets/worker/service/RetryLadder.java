@@ -0,0 +1,153 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.PARKING_QUEUE;
+
+/**
+ * Exponential backoff for failed messages.
+ *
+ * Each tier is a queue with its own message TTL that dead-letters expired messages back to the processing
+ * queue. A failed message is republished to the tier matching the number of attempts it has already had,
+ * taken from the x-death counts the broker adds each time it expires from a tier. Once the maximum number
+ * of attempts is reached it is parked instead, so a poison message stops taking up worker capacity.
+ *
+ * Each processing lane has its own tiers, so a retried message comes back to the lane it failed in.
+ */
+@Slf4j
+@Component
+public class RetryLadder {
+
+    // Our own attempt count, for brokers that don't carry x-death over a republish
+    public static final String RETRY_COUNT_HEADER = "x-retry-count";
+
+    private static final long CONFIRM_TIMEOUT_MS = 5000;
+
+    private final RabbitTemplate rabbitTemplate;
+    private final AckAggregator ackAggregator;
+    private final ProcessingMetrics processingMetrics;
+    private final List<Duration> delays;
+    private final int maxAttempts;
+    private final Map<ProcessingLane, List<Counter>> tierCounters = new EnumMap<>(ProcessingLane.class);
+    private final Map<ProcessingLane, Counter> parkedCounters = new EnumMap<>(ProcessingLane.class);
+
+    public RetryLadder(RabbitTemplate rabbitTemplate,
+                       AckAggregator ackAggregator,
+                       ProcessingMetrics processingMetrics,
+                       MeterRegistry registry,
+                       @Value("${worker.retry.delays:5s,30s,5m,30m}") List<Duration> delays,
+                       @Value("${worker.retry.max-attempts:5}") int maxAttempts) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.ackAggregator = ackAggregator;
+        this.processingMetrics = processingMetrics;
+        this.delays = delays;
+        this.maxAttempts = maxAttempts;
+        for (ProcessingLane lane : ProcessingLane.values()) {
+            tierCounters.put(lane, delays.stream()
+                    .map(delay -> retryCounter(registry, lane, tierName(delay)))
+                    .collect(Collectors.toList()));
+            parkedCounters.put(lane, retryCounter(registry, lane, "parked"));
+        }
+    }
+
+    private static Counter retryCounter(MeterRegistry registry, ProcessingLane lane, String tier) {
+        return Counter.builder("worker.retry.messages")
+                .description("Failed messages sent to a retry tier or parked")
+                .tag("lane", lane.tag())
+                .tag("tier", tier)
+                .register(registry);
+    }
+
+    /**
+     * Queue name of the lane's tier with the given delay, e.g. "image-processing.retry.30s"
+     */
+    public static String tierQueueName(ProcessingLane lane, Duration delay) {
+        return lane.getRetryTierQueuePrefix() + tierName(delay);
+    }
+
+    private static String tierName(Duration delay) {
+        if (delay.toMillis() % 60000 == 0) {
+            return delay.toMinutes() + "m";
+        }
+        if (delay.toMillis() % 1000 == 0) {
+            return delay.toSeconds() + "s";
+        }
+        return delay.toMillis() + "ms";
+    }
+
+    /**
+     * Move a failed delivery to its next retry tier, or park it once it has used up its attempts.
+     * The delivery is only acked once the copy has been confirmed by the broker; if that fails it is
+     * nacked, which dead-letters it to the first tier.
+     */
+    public void retryOrPark(Message message, Channel channel, long deliveryTag, ProcessingLane lane) throws IOException {
+        int attempts = previousAttempts(message.getMessageProperties(), lane) + 1;
+        String queue;
+        if (attempts >= maxAttempts || delays.isEmpty()) {
+            queue = PARKING_QUEUE;
+        } else {
+            queue = tierQueueName(lane, delays.get(Math.min(attempts - 1, delays.size() - 1)));
+        }
+
+        try {
+            message.getMessageProperties().setHeader(RETRY_COUNT_HEADER, attempts);
+            rabbitTemplate.invoke(operations -> {
+                operations.send("", queue, message);
+                operations.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("Failed to move message to {}, rejecting it instead", queue, e);
+            ackAggregator.nack(channel, deliveryTag);
+            processingMetrics.recordOutcome(ProcessingMetrics.Outcome.NACK);
+            return;
+        }
+
+        ackAggregator.ack(channel, deliveryTag);
+        if (queue.equals(PARKING_QUEUE)) {
+            parkedCounters.get(lane).increment();
+            processingMetrics.recordOutcome(ProcessingMetrics.Outcome.PARKED);
+            log.warn("Message parked in {} after {} attempts", PARKING_QUEUE, attempts);
+        } else {
+            tierCounters.get(lane).get(Math.min(attempts - 1, delays.size() - 1)).increment();
+            processingMetrics.recordOutcome(ProcessingMetrics.Outcome.RETRY);
+            log.info("Message scheduled for retry {} of {} through {}", attempts, maxAttempts - 1, queue);
+        }
+    }
+
+    /**
+     * Attempts so far: the number of times the message expired from a retry tier, or our own count if higher
+     */
+    private int previousAttempts(MessageProperties properties, ProcessingLane lane) {
+        long expired = 0;
+        List<Map<String, ?>> deaths = properties.getXDeathHeader();
+        if (deaths != null) {
+            for (Map<String, ?> death : deaths) {
+                Object queue = death.get("queue");
+                if (queue != null && queue.toString().startsWith(lane.getRetryTierQueuePrefix())
+                        && death.get("count") instanceof Number count) {
+                    expired += count.longValue();
+                }
+            }
+        }
+        Object header = properties.getHeader(RETRY_COUNT_HEADER);
+        long counted = header instanceof Number number ? number.longValue() : 0;
+        return (int) Math.max(expired, counted);
+    }
+}
@@ -1,6 +1,6 @@
 package com.microsoft.migration.assets.worker.service;
 
-import com.microsoft.migration.assets.worker.repository.ImageMetadataRepository;
+import com.microsoft.migration.assets.worker.model.ImageRendition;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
@@ -11,16 +11,19 @@ import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetUrlRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Service
 @Profile("!dev")
 @RequiredArgsConstructor
 public class S3FileProcessingService extends AbstractFileProcessingService {
     private final S3Client s3Client;
-    private final ImageMetadataRepository imageMetadataRepository;
+    private final MetadataWriteBehind metadataWriteBehind;
     
     @Value("${aws.s3.bucket}")
     private String bucketName;
@@ -37,6 +40,16 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
         }
     }
 
+    @Override
+    public InputStream openOriginal(String key) throws Exception {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .build();
+
+        return s3Client.getObject(request);
+    }
+
     @Override
     public void uploadThumbnail(Path source, String key, String contentType) throws Exception {
         PutObjectRequest request = PutObjectRequest.builder()
@@ -46,19 +59,34 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
                 .build();
                 
         s3Client.putObject(request, RequestBody.fromFile(source));
+    }
+
+    @Override
+    public void uploadThumbnail(InputStream source, long length, String key, String contentType) throws Exception {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
 
-        // Extract the original key from the thumbnail key
-        String originalKey = extractOriginalKey(key);
-        
-        // Find and update metadata
-        imageMetadataRepository.findAll().stream()
-            .filter(metadata -> metadata.getS3Key().equals(originalKey))
-            .findFirst()
-            .ifPresent(metadata -> {
-                metadata.setThumbnailKey(key);
-                metadata.setThumbnailUrl(generateUrl(key));
-                imageMetadataRepository.save(metadata);
-            });
+        s3Client.putObject(request, RequestBody.fromInputStream(source, length));
+    }
+
+    @Override
+    public void uploadRendition(InputStream source, long length, String key, String contentType) throws Exception {
+        PutObjectRequest request = PutObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .contentType(contentType)
+                .build();
+
+        s3Client.putObject(request, RequestBody.fromInputStream(source, length));
+    }
+
+    @Override
+    protected CompletableFuture<Void> recordMetadata(String key, String thumbnailKey, List<ImageRendition> renditions) {
+        return metadataWriteBehind.submit(
+            new MetadataWriteBehind.MetadataUpdate(key, thumbnailKey, generateUrl(thumbnailKey), renditions));
     }
 
     @Override
@@ -74,20 +102,4 @@ public class S3FileProcessingService extends AbstractFileProcessingService {
                 .build();
         return s3Client.utilities().getUrl(request).toString();
     }
-
-    private String extractOriginalKey(String key) {
-        // For a key like "xxxxx_thumbnail.png", get "xxxxx.png"
-        String suffix = "_thumbnail";
-        int extensionIndex = key.lastIndexOf('.');
-        if (extensionIndex > 0) {
-            String nameWithoutExtension = key.substring(0, extensionIndex);
-            String extension = key.substring(extensionIndex);
-            
-            int suffixIndex = nameWithoutExtension.lastIndexOf(suffix);
-            if (suffixIndex > 0) {
-                return nameWithoutExtension.substring(0, suffixIndex) + extension;
-            }
-        }
-        return key;
-    }
 }
\ No newline at end of file
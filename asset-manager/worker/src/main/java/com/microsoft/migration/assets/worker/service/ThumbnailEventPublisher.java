@@ -0,0 +1,42 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ThumbnailReadyEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.THUMBNAIL_EVENTS_EXCHANGE;
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.THUMBNAIL_EVENTS_TTL;
+
+/**
+ * Publishes "thumbnail ready" notifications so the web module can update open galleries
+ * without polling. Events go to a fanout exchange, so every queue bound to it receives each of them.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ThumbnailEventPublisher {
+
+    private final RabbitTemplate rabbitTemplate;
+
+    public void publishThumbnailReady(String key, String thumbnailKey, String thumbnailUrl, String storageType) {
+        ThumbnailReadyEvent event = new ThumbnailReadyEvent(
+            key,
+            thumbnailKey,
+            thumbnailUrl,
+            storageType,
+            System.currentTimeMillis()
+        );
+        try {
+            rabbitTemplate.convertAndSend(THUMBNAIL_EVENTS_EXCHANGE, "", event, message -> {
+                message.getMessageProperties().setExpiration(Long.toString(THUMBNAIL_EVENTS_TTL.toMillis()));
+                return message;
+            });
+            log.debug("Published thumbnail ready event for: {}", key);
+        } catch (Exception e) {
+            // Notifications are best effort, the thumbnail itself has already been stored
+            log.warn("Failed to publish thumbnail ready event for: {}", key, e);
+        }
+    }
+}
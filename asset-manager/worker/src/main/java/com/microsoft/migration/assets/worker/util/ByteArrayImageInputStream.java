@@ -0,0 +1,49 @@
+package com.microsoft.migration.assets.worker.util;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * Seekable image input stream reading directly from a byte array, without the cache copy made by
+ * {@link javax.imageio.stream.MemoryCacheImageInputStream}.
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    public ByteArrayImageInputStream(byte[] data, int offset, int length) {
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int read() {
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        return data[offset + (int) streamPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+        int count = (int) Math.min(len, length - streamPos);
+        System.arraycopy(data, offset + (int) streamPos, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
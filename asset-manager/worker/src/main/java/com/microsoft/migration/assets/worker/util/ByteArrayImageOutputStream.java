@@ -0,0 +1,61 @@
+package com.microsoft.migration.assets.worker.util;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.io.IOException;
+
+/**
+ * Seekable image output stream writing directly into a pooled buffer, without the block cache allocated by
+ * {@link javax.imageio.stream.MemoryCacheImageOutputStream}. Writers that seek back to patch in chunk
+ * lengths, like the PNG writer, overwrite the bytes already written.
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    private final ByteBufferPool.PooledBuffer buffer;
+    private final int offset;
+    private final byte[] single = new byte[1];
+
+    public ByteArrayImageOutputStream(ByteBufferPool.PooledBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        flushBits();
+        if (len == 0) {
+            return;
+        }
+        buffer.write(offset + (int) streamPos, b, off, len);
+        streamPos += len;
+    }
+
+    @Override
+    public int read() {
+        int count = read(single, 0, 1);
+        return count < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        int count = buffer.read(offset + (int) streamPos, b, off, len);
+        if (count > 0) {
+            streamPos += count;
+        }
+        return count;
+    }
+
+    @Override
+    public long length() {
+        return Math.max(buffer.size() - offset, 0);
+    }
+}
@@ -0,0 +1,99 @@
+package com.microsoft.migration.assets.worker.util;
+
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Bounded pool of growable byte buffers used to hold encoded images in memory between encoding and upload.
+ *
+ * Buffers can be acquired on one thread and released on another. Buffers that grew beyond
+ * maxRetainedBytes are dropped on release instead of being kept around.
+ */
+public class ByteBufferPool {
+
+    private final BlockingQueue<PooledBuffer> buffers;
+    private final int initialBytes;
+    private final int maxRetainedBytes;
+
+    public ByteBufferPool(int maxPooled, int initialBytes, int maxRetainedBytes) {
+        this.buffers = new ArrayBlockingQueue<>(Math.max(maxPooled, 1));
+        this.initialBytes = initialBytes;
+        this.maxRetainedBytes = maxRetainedBytes;
+    }
+
+    public PooledBuffer acquire() {
+        PooledBuffer buffer = buffers.poll();
+        return buffer != null ? buffer : new PooledBuffer(initialBytes);
+    }
+
+    public void release(PooledBuffer buffer) {
+        if (buffer == null || buffer.capacity() > maxRetainedBytes) {
+            return;
+        }
+        buffer.reset();
+        buffers.offer(buffer);
+    }
+
+    /**
+     * Byte array output stream whose content can be read back without copying
+     */
+    public static class PooledBuffer extends ByteArrayOutputStream {
+
+        PooledBuffer(int initialBytes) {
+            super(initialBytes);
+        }
+
+        public int capacity() {
+            return buf.length;
+        }
+
+        public synchronized InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+
+        public synchronized ImageInputStream toImageInputStream() {
+            return new ByteArrayImageInputStream(buf, 0, count);
+        }
+
+        /**
+         * Seekable image output stream writing into this buffer, from its current end
+         */
+        public ImageOutputStream toImageOutputStream() {
+            return new ByteArrayImageOutputStream(this, count);
+        }
+
+        /**
+         * Write at a position relative to the start of the buffer, overwriting what is there and growing the
+         * buffer as needed. A gap left by writing beyond the end is zero-filled.
+         */
+        synchronized void write(int position, byte[] b, int off, int len) {
+            int end = position + len;
+            if (end > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, end));
+            }
+            if (position > count) {
+                Arrays.fill(buf, count, position, (byte) 0);
+            }
+            System.arraycopy(b, off, buf, position, len);
+            count = Math.max(count, end);
+        }
+
+        /**
+         * Read up to len bytes from a position relative to the start of the buffer; returns -1 at the end
+         */
+        synchronized int read(int position, byte[] b, int off, int len) {
+            if (position >= count) {
+                return -1;
+            }
+            int read = Math.min(len, count - position);
+            System.arraycopy(buf, position, b, off, read);
+            return read;
+        }
+    }
+}
@@ -12,6 +12,20 @@ public class StorageUtil {
         return key + "_thumbnail";
     }
 
+    /**
+     * Get the prefix under which all renditions of a given key are stored
+     */
+    public static String getRenditionPrefix(String key) {
+        return "renditions/" + key + "/";
+    }
+
+    /**
+     * Get the rendition key for a given key, e.g. "renditions/photo.png/300x200.webp"
+     */
+    public static String getRenditionKey(String key, int width, int height, String format) {
+        return getRenditionPrefix(key) + width + "x" + height + "." + format;
+    }
+
     /**
      * Get file extension from a key or filename
      */
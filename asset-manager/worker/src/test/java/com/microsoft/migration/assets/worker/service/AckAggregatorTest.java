@@ -0,0 +1,155 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AckAggregatorTest {
+
+    private MeterRegistry registry;
+    private Channel channel;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        channel = mock(Channel.class);
+        when(channel.isOpen()).thenReturn(true);
+    }
+
+    @Test
+    void acksBatchWithOneMultipleAck() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 3);
+        deliver(aggregator, 1, 2, 3);
+
+        aggregator.ack(channel, 1);
+        aggregator.ack(channel, 2);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        aggregator.ack(channel, 3);
+        verify(channel).basicAck(3, true);
+        assertThat(registry.get("worker.ack.round.trips").tag("type", "ack").counter().count()).isEqualTo(1);
+        assertThat(registry.get("worker.ack.messages").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void holdsBackAcksBehindDeliveryInProgress() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 2);
+        deliver(aggregator, 1, 2, 3);
+
+        aggregator.ack(channel, 2);
+        aggregator.ack(channel, 3);
+        aggregator.flush();
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        aggregator.ack(channel, 1);
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void acksOnlyUpToFirstDeliveryInProgress() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 10);
+        deliver(aggregator, 1, 2, 3, 4);
+
+        aggregator.ack(channel, 1);
+        aggregator.ack(channel, 2);
+        aggregator.ack(channel, 4);
+        aggregator.flush();
+        verify(channel).basicAck(2, true);
+
+        aggregator.ack(channel, 3);
+        aggregator.flush();
+        verify(channel).basicAck(4, true);
+        assertThat(registry.get("worker.ack.messages").counter().count()).isEqualTo(4);
+    }
+
+    @Test
+    void nacksRightAwayAndAcksAcrossThem() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 10);
+        deliver(aggregator, 1, 2, 3);
+
+        aggregator.ack(channel, 1);
+        aggregator.nack(channel, 2);
+        verify(channel).basicNack(2, false, false);
+
+        aggregator.ack(channel, 3);
+        aggregator.flush();
+        verify(channel).basicAck(3, true);
+        assertThat(registry.get("worker.ack.messages").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void neverAcksUpToNackedTag() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 10);
+        deliver(aggregator, 1, 2);
+
+        aggregator.ack(channel, 1);
+        aggregator.nack(channel, 2);
+        aggregator.flush();
+
+        var order = inOrder(channel);
+        order.verify(channel).basicNack(2, false, false);
+        order.verify(channel).basicAck(1, true);
+        verify(channel, never()).basicAck(2, true);
+    }
+
+    @Test
+    void nackClosingGapFlushesFullBatch() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 2);
+        deliver(aggregator, 1, 2, 3);
+
+        aggregator.ack(channel, 2);
+        aggregator.ack(channel, 3);
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+        aggregator.nack(channel, 1);
+        verify(channel).basicAck(3, true);
+    }
+
+    @Test
+    void dropsClosedChannelWithoutAcking() throws Exception {
+        AckAggregator aggregator = new AckAggregator(registry, 10);
+        deliver(aggregator, 1);
+        aggregator.ack(channel, 1);
+
+        when(channel.isOpen()).thenReturn(false);
+        aggregator.flush();
+        when(channel.isOpen()).thenReturn(true);
+        aggregator.flush();
+
+        verify(channel, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test
+    void keepsChannelsApart() throws Exception {
+        Channel other = mock(Channel.class);
+        when(other.isOpen()).thenReturn(true);
+        AckAggregator aggregator = new AckAggregator(registry, 10);
+        aggregator.delivered(channel, 1);
+        aggregator.delivered(other, 1);
+        aggregator.delivered(other, 2);
+
+        aggregator.ack(other, 2);
+        aggregator.ack(channel, 1);
+        aggregator.flush();
+
+        verify(channel).basicAck(1, true);
+        verify(other, never()).basicAck(anyLong(), anyBoolean());
+    }
+
+    private void deliver(AckAggregator aggregator, long... tags) {
+        for (long tag : tags) {
+            aggregator.delivered(channel, tag);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CpuStageExecutorTest {
+
+    // Stand-ins for the listener threads, which block in execute() until their job is done
+    private final ExecutorService listeners = Executors.newCachedThreadPool();
+    private CpuStageExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        listeners.shutdownNow();
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    private <T> Future<T> submit(ProcessingLane lane, Callable<T> task) {
+        return listeners.submit(() -> executor.execute(lane, task));
+    }
+
+    private static Callable<Void> awaiting(CountDownLatch release) {
+        return () -> {
+            release.await();
+            return null;
+        };
+    }
+
+    private static void awaitValue(IntSupplier value, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (value.getAsInt() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(value.getAsInt()).isEqualTo(expected);
+    }
+
+    @Test
+    void returnsResultOfTask() throws Exception {
+        executor = new CpuStageExecutor(2, 0, 0.5);
+
+        assertThat(executor.execute(ProcessingLane.INTERACTIVE, () -> "thumbnail")).isEqualTo("thumbnail");
+        assertThat(executor.getAdmitted()).isZero();
+    }
+
+    @Test
+    void rethrowsFailureOfTask() {
+        executor = new CpuStageExecutor(2, 0, 0.5);
+
+        IOException failure = new IOException("corrupt image");
+        assertThatThrownBy(() -> executor.execute(ProcessingLane.BULK, () -> {
+            throw failure;
+        })).isSameAs(failure);
+        assertThat(executor.getAdmittedBulk()).isZero();
+    }
+
+    @Test
+    void takesQueuedInteractiveJobsBeforeBulkJobs() throws Exception {
+        executor = new CpuStageExecutor(1, 10, 1.0);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+
+        // Occupy the only thread, then queue a bulk job ahead of an interactive one
+        Future<Void> running = submit(ProcessingLane.INTERACTIVE, awaiting(release));
+        awaitValue(executor::getAdmitted, 1);
+        Future<Boolean> bulk = submit(ProcessingLane.BULK, () -> order.add("bulk"));
+        awaitValue(executor::getQueued, 1);
+        Future<Boolean> interactive = submit(ProcessingLane.INTERACTIVE, () -> order.add("interactive"));
+        awaitValue(executor::getQueued, 2);
+
+        release.countDown();
+        for (Future<?> future : List.of(running, bulk, interactive)) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(order).containsExactly("interactive", "bulk");
+    }
+
+    @Test
+    void admitsBulkJobsOnTheirShareOfThreads() throws Exception {
+        executor = new CpuStageExecutor(4, 0, 0.5);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        List<Future<Void>> bulk = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            bulk.add(submit(ProcessingLane.BULK, () -> {
+                running.incrementAndGet();
+                release.await();
+                return null;
+            }));
+        }
+        awaitValue(running::get, 2);
+
+        // The other two bulk jobs wait outside the pool, which still runs interactive work
+        assertThat(executor.getAdmittedBulk()).isEqualTo(2);
+        assertThat(submit(ProcessingLane.INTERACTIVE, () -> "thumbnail").get(5, TimeUnit.SECONDS))
+                .isEqualTo("thumbnail");
+        assertThat(running.get()).isEqualTo(2);
+
+        release.countDown();
+        for (Future<Void> future : bulk) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertThat(running.get()).isEqualTo(4);
+        assertThat(executor.getAdmittedBulk()).isZero();
+    }
+
+    @Test
+    void admitsAtLeastOneBulkJob() throws Exception {
+        executor = new CpuStageExecutor(1, 0, 0.1);
+
+        assertThat(executor.execute(ProcessingLane.BULK, () -> "thumbnail")).isEqualTo("thumbnail");
+    }
+}
@@ -0,0 +1,184 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ImageRendition;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MetadataWriteBehindTest {
+
+    private MeterRegistry registry;
+    private JdbcTemplate jdbcTemplate;
+    private PlatformTransactionManager transactionManager;
+    private MetadataWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        jdbcTemplate = mock(JdbcTemplate.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (writeBehind != null) {
+            writeBehind.destroy();
+        }
+    }
+
+    private MetadataWriteBehind writeBehind(int batchSize) {
+        writeBehind = new MetadataWriteBehind(jdbcTemplate, new TransactionTemplate(transactionManager), registry,
+                batchSize, 2);
+        return writeBehind;
+    }
+
+    private static MetadataWriteBehind.MetadataUpdate update(String key, ImageRendition... renditions) {
+        return new MetadataWriteBehind.MetadataUpdate(key, key + "_thumbnail", "url/" + key, List.of(renditions));
+    }
+
+    private static ImageRendition rendition(String key, int width) {
+        ImageRendition rendition = new ImageRendition();
+        rendition.setS3Key(key);
+        rendition.setFormat("jpg");
+        rendition.setWidth(width);
+        rendition.setHeight(width);
+        return rendition;
+    }
+
+    @Test
+    void writesNothingUntilFlushed() {
+        CompletableFuture<Void> future = writeBehind(10).submit(update("a"));
+
+        assertThat(future).isNotDone();
+        verify(jdbcTemplate, never()).batchUpdate(startsWith("UPDATE image_metadata"), anyList());
+        verify(transactionManager, never()).getTransaction(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void writesBatchInOneTransactionAndCompletesWaiters() throws Exception {
+        MetadataWriteBehind writeBehind = writeBehind(10);
+        CompletableFuture<Void> a = writeBehind.submit(update("a", rendition("a_150", 150), rendition("a_300", 300)));
+        CompletableFuture<Void> b = writeBehind.submit(update("b"));
+
+        writeBehind.flush();
+
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+        verify(transactionManager).commit(any());
+        ArgumentCaptor<List<Object[]>> thumbnails = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE image_metadata"), thumbnails.capture());
+        assertThat(thumbnails.getValue()).extracting(row -> row[3]).containsExactly("a", "b");
+        ArgumentCaptor<List<Object[]>> renditions = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO image_rendition"), renditions.capture());
+        assertThat(renditions.getValue()).extracting(row -> row[0]).containsExactly("a_150", "a_300");
+        assertThat(registry.get("worker.metadata.batch.size").summary().totalAmount()).isEqualTo(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void coalescesUpdatesOfSameKey() throws Exception {
+        MetadataWriteBehind writeBehind = writeBehind(10);
+        CompletableFuture<Void> first = writeBehind.submit(update("a", rendition("old", 150)));
+        CompletableFuture<Void> second = writeBehind.submit(update("a", rendition("new", 150)));
+
+        writeBehind.flush();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        ArgumentCaptor<List<Object[]>> renditions = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(startsWith("INSERT INTO image_rendition"), renditions.capture());
+        assertThat(renditions.getValue()).extracting(row -> row[0]).containsExactly("new");
+    }
+
+    @Test
+    void flushesOnceBatchIsFull() throws Exception {
+        MetadataWriteBehind writeBehind = writeBehind(2);
+        CompletableFuture<Void> a = writeBehind.submit(update("a"));
+        assertThat(a).isNotDone();
+
+        CompletableFuture<Void> b = writeBehind.submit(update("b"));
+
+        a.get(5, TimeUnit.SECONDS);
+        b.get(5, TimeUnit.SECONDS);
+        verify(jdbcTemplate).batchUpdate(startsWith("UPDATE image_metadata"), anyList());
+    }
+
+    @Test
+    void failsEveryWaiterOfFailedBatch() throws Exception {
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE image_metadata"), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("connection lost"));
+        MetadataWriteBehind writeBehind = writeBehind(10);
+        CompletableFuture<Void> first = writeBehind.submit(update("a"));
+        CompletableFuture<Void> second = writeBehind.submit(update("a"));
+        CompletableFuture<Void> other = writeBehind.submit(update("b"));
+
+        writeBehind.flush();
+
+        for (CompletableFuture<Void> future : List.of(first, second, other)) {
+            assertThat(future).failsWithin(5, TimeUnit.SECONDS)
+                    .withThrowableThat().withCauseInstanceOf(DataAccessResourceFailureException.class);
+        }
+        verify(transactionManager).rollback(any());
+    }
+
+    @Test
+    void runsCallbacksOffFlushingThread() throws Exception {
+        MetadataWriteBehind writeBehind = writeBehind(10);
+        AtomicReference<Thread> callbackThread = new AtomicReference<>();
+        CompletableFuture<Void> done = writeBehind.submit(update("a"))
+                .thenRun(() -> callbackThread.set(Thread.currentThread()));
+
+        writeBehind.flush();
+
+        done.get(5, TimeUnit.SECONDS);
+        assertThat(callbackThread.get()).isNotSameAs(Thread.currentThread());
+    }
+
+    @Test
+    void slowCallbackDoesNotHoldUpNextFlush() throws Exception {
+        MetadataWriteBehind writeBehind = writeBehind(10);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> blocked = writeBehind.submit(update("a")).thenRun(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writeBehind.flush();
+
+        // The first callback is still blocked, as a retry waiting for broker confirms would be
+        CompletableFuture<Void> next = writeBehind.submit(update("b"));
+        writeBehind.flush();
+
+        next.get(5, TimeUnit.SECONDS);
+        assertThat(blocked).isNotDone();
+        verify(jdbcTemplate, times(2)).batchUpdate(startsWith("UPDATE image_metadata"), anyList());
+        release.countDown();
+        blocked.get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,168 @@
+package com.microsoft.migration.assets.worker.service;
+
+import com.microsoft.migration.assets.worker.model.ProcessingLane;
+import com.rabbitmq.client.Channel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.migration.assets.worker.config.RabbitConfig.PARKING_QUEUE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RetryLadderTest {
+
+    private static final List<Duration> DELAYS =
+            List.of(Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofMinutes(5), Duration.ofMinutes(30));
+
+    private MeterRegistry registry;
+    private RabbitOperations operations;
+    private AckAggregator ackAggregator;
+    private ProcessingMetrics processingMetrics;
+    private Channel channel;
+    private final List<String> sentTo = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        operations = mock(RabbitOperations.class);
+        ackAggregator = mock(AckAggregator.class);
+        processingMetrics = mock(ProcessingMetrics.class);
+        channel = mock(Channel.class);
+        doAnswer(invocation -> sentTo.add(invocation.getArgument(1)))
+                .when(operations).send(eq(""), any(String.class), any(Message.class));
+    }
+
+    @Test
+    void firstFailureGoesToFirstTier() throws Exception {
+        Message message = message();
+
+        ladder(5).retryOrPark(message, channel, 7, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly("image-processing.retry.5s");
+        assertThat((Object) message.getMessageProperties().getHeader(RetryLadder.RETRY_COUNT_HEADER)).isEqualTo(1);
+        verify(ackAggregator).ack(channel, 7);
+        assertThat(retried(ProcessingLane.INTERACTIVE, "5s")).isEqualTo(1);
+    }
+
+    @Test
+    void countsExpiriesFromTheLanesTiers() throws Exception {
+        Message message = message(
+                death("image-processing.retry.5s", 1),
+                death("image-processing.retry.30s", 1));
+
+        ladder(5).retryOrPark(message, channel, 1, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly("image-processing.retry.5m");
+    }
+
+    @Test
+    void ignoresDeathsOutsideTheLanesTiers() throws Exception {
+        // Rejected from the processing queue itself, and expired from the other lane's tiers
+        Message message = message(
+                death("image-processing", 3),
+                death("image-processing.bulk.retry.5s", 2));
+
+        ladder(5).retryOrPark(message, channel, 1, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly("image-processing.retry.5s");
+    }
+
+    @Test
+    void bulkLaneUsesItsOwnTiers() throws Exception {
+        Message message = message(death("image-processing.bulk.retry.5s", 1));
+
+        ladder(5).retryOrPark(message, channel, 1, ProcessingLane.BULK);
+
+        assertThat(sentTo).containsExactly("image-processing.bulk.retry.30s");
+        assertThat(retried(ProcessingLane.BULK, "30s")).isEqualTo(1);
+    }
+
+    @Test
+    void ownCountWinsWhenHigherThanDeaths() throws Exception {
+        Message message = message(death("image-processing.retry.5s", 1));
+        message.getMessageProperties().setHeader(RetryLadder.RETRY_COUNT_HEADER, 3);
+
+        ladder(10).retryOrPark(message, channel, 1, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly("image-processing.retry.30m");
+        assertThat((Object) message.getMessageProperties().getHeader(RetryLadder.RETRY_COUNT_HEADER)).isEqualTo(4);
+    }
+
+    @Test
+    void staysOnLastTierPastTheLadder() throws Exception {
+        Message message = message(death("image-processing.retry.30m", 6));
+
+        ladder(10).retryOrPark(message, channel, 1, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly("image-processing.retry.30m");
+    }
+
+    @Test
+    void parksAfterMaxAttempts() throws Exception {
+        Message message = message(death("image-processing.retry.5s", 1), death("image-processing.retry.30s", 1),
+                death("image-processing.retry.5m", 1), death("image-processing.retry.30m", 1));
+
+        ladder(5).retryOrPark(message, channel, 9, ProcessingLane.INTERACTIVE);
+
+        assertThat(sentTo).containsExactly(PARKING_QUEUE);
+        verify(ackAggregator).ack(channel, 9);
+        verify(processingMetrics).recordOutcome(ProcessingMetrics.Outcome.PARKED);
+        assertThat(retried(ProcessingLane.INTERACTIVE, "parked")).isEqualTo(1);
+    }
+
+    @Test
+    void nacksWhenCopyIsNotConfirmed() throws Exception {
+        doThrow(new AmqpException("nacked by broker")).when(operations).waitForConfirmsOrDie(anyLong());
+
+        ladder(5).retryOrPark(message(), channel, 3, ProcessingLane.INTERACTIVE);
+
+        verify(ackAggregator).nack(channel, 3);
+        verify(ackAggregator, never()).ack(any(), anyLong());
+        verify(processingMetrics).recordOutcome(ProcessingMetrics.Outcome.NACK);
+        assertThat(retried(ProcessingLane.INTERACTIVE, "5s")).isZero();
+    }
+
+    private RetryLadder ladder(int maxAttempts) {
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.invoke(any())).thenAnswer(invocation ->
+                invocation.<RabbitOperations.OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+        return new RetryLadder(rabbitTemplate, ackAggregator, processingMetrics, registry, DELAYS, maxAttempts);
+    }
+
+    private double retried(ProcessingLane lane, String tier) {
+        return registry.get("worker.retry.messages").tag("lane", lane.tag()).tag("tier", tier).counter().count();
+    }
+
+    @SafeVarargs
+    private static Message message(Map<String, ?>... deaths) {
+        MessageProperties properties = new MessageProperties();
+        if (deaths.length > 0) {
+            properties.setHeader("x-death", List.of(deaths));
+        }
+        return new Message("{}".getBytes(), properties);
+    }
+
+    private static Map<String, ?> death(String queue, long count) {
+        return Map.of("queue", queue, "reason", "expired", "count", count);
+    }
+}